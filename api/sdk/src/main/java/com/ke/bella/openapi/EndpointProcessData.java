@@ -10,6 +10,7 @@ import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Data
@@ -33,6 +34,8 @@ public class EndpointProcessData {
     private long requestMillis;
     private long requestTime; //s
     private long firstPackageTime; //ms
+    private long logTime; //s 请求结束（日志入队）时间，日志后处理在消费线程中执行，耗时按此计算
+    private long logMillis; //ms 请求结束时间，渠道延迟统计按此计算
     private long transcriptionDuration;
     private long duration;
     private Object request;
@@ -52,6 +55,12 @@ public class EndpointProcessData {
     private BigDecimal cost;
     private boolean innerLog;
     private Integer maxWaitSec;
+    private Integer reservedTokens; //准入时预占的tpm额度
+    @JsonIgnore
+    private String inflightChannel; //占用在途请求计数的渠道，请求结束时释放
+    @JsonIgnore
+    private String quotaSlot; //占用并发配额的apikey:模型，请求结束时释放
+    private List<ChannelAttempt> failoverAttempts; //未被采用的渠道请求（首包前失败转移、对冲请求被取消）
 
     public void setApikeyInfo(ApikeyInfo ak) {
         this.setApikey(ak.getApikey());
@@ -60,4 +69,14 @@ public class EndpointProcessData {
         this.setAccountType(ak.getOwnerType());
         this.setAccountCode(ak.getOwnerCode());
     }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ChannelAttempt {
+        private String channelCode;
+        private Integer httpCode;
+        private String message;
+        private long duration; //ms
+    }
 }
@@ -2,11 +2,13 @@ package com.ke.bella.openapi.apikey;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.ke.bella.openapi.utils.JacksonUtils;
-import com.ke.bella.openapi.utils.MatchUtils;
+import com.ke.bella.openapi.utils.PermissionMatcher;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -41,6 +43,10 @@ public class ApikeyInfo implements Serializable {
     private String remark;
     private Long userId;
     private ApikeyInfo parentInfo;
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient PermissionMatcher permissionMatcher;
 
     public RolePath getRolePath() {
         if(rolePath != null) {
@@ -53,9 +59,15 @@ public class ApikeyInfo implements Serializable {
         return rolePath;
     }
 
+    public PermissionMatcher getPermissionMatcher() {
+        if(permissionMatcher == null) {
+            permissionMatcher = PermissionMatcher.of(getRolePath());
+        }
+        return permissionMatcher;
+    }
+
     public boolean hasPermission(String url) {
-       return getRolePath().getIncluded().stream().anyMatch(pattern -> MatchUtils.matchUrl(pattern, url))
-                && getRolePath().getExcluded().stream().noneMatch(pattern -> MatchUtils.matchUrl(pattern, url));
+        return getPermissionMatcher().matches(url);
     }
 
     @Data
@@ -18,10 +18,12 @@ import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 
+import org.codehaus.groovy.runtime.InvokerHelper;
+
 public class GroovyExecutor {
 
-    // 缓存编译后的脚本
-    private static final Cache<String, Script> scriptCache = Caffeine.newBuilder()
+    // 缓存编译后的脚本类，每次执行创建新实例，避免并发执行时共享Binding
+    private static final Cache<String, Class<? extends Script>> scriptCache = Caffeine.newBuilder()
             .maximumSize(100)
             .expireAfterAccess(30, TimeUnit.MINUTES)
             .build();
@@ -40,14 +42,11 @@ public class GroovyExecutor {
      * @return 脚本执行结果
      */
     public static Object executeScript(String scriptText, Map<String, Object> params) {
-        // 获取编译后的脚本
-        Script script = getCompiledScript(scriptText);
-
         // 创建绑定并设置参数
         Binding binding = createBinding(params);
 
-        // 设置绑定并执行脚本
-        script.setBinding(binding);
+        // 获取编译后的脚本并执行
+        Script script = getCompiledScript(scriptText, binding);
         return script.run();
     }
 
@@ -62,12 +61,11 @@ public class GroovyExecutor {
      * @throws Exception 执行过程中的异常
      */
     public static Object testScript(String scriptText, Map<String, Object> params, long timeoutMs, long memoryLimitBytes) {
-        // 获取编译后的脚本
-        Script script = getCompiledScript(scriptText);
-
         // 创建绑定并设置参数
         Binding binding = createBinding(params);
-        script.setBinding(binding);
+
+        // 获取编译后的脚本
+        Script script = getCompiledScript(scriptText, binding);
 
         // 创建一个可以在单独线程中执行的任务
         Callable<Object> task = () -> {
@@ -107,11 +105,12 @@ public class GroovyExecutor {
     /**
      * 获取编译后的脚本
      */
-    private static Script getCompiledScript(String scriptText) {
-        return scriptCache.get(scriptText, key -> {
+    private static Script getCompiledScript(String scriptText, Binding binding) {
+        Class<? extends Script> scriptClass = scriptCache.get(scriptText, key -> {
             GroovyShell shell = new GroovyShell(classLoader);
-            return shell.parse(key);
+            return shell.parse(key).getClass();
         });
+        return InvokerHelper.createScript(scriptClass, binding);
     }
 
     /**
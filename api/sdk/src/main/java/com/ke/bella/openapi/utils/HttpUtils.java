@@ -6,8 +6,12 @@ import com.ke.bella.openapi.protocol.BellaEventSourceListener;
 import com.ke.bella.openapi.protocol.BellaStreamCallback;
 import com.ke.bella.openapi.protocol.BellaWebSocketListener;
 import com.ke.bella.openapi.protocol.Callbacks;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import okhttp3.Call;
 import okhttp3.ConnectionPool;
 import okhttp3.Dispatcher;
+import okhttp3.EventListener;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -17,45 +21,171 @@ import okhttp3.internal.Util;
 import okhttp3.sse.EventSources;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 /**
  * Author: Stan Sai Date: 2024/8/14 12:09 description:
  */
 public class HttpUtils {
+    public static final String DEFAULT_PROFILE = "default";
     private static final ConnectionPool connectionPool = new ConnectionPool(1500, 5, TimeUnit.MINUTES);
     private static final ExecutorService executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
             new SynchronousQueue<>(), Util.threadFactory("OkHttp Dispatcher", false));
     private static final int defaultConnectionTimeout = 120;
     private static final int defaultReadTimeout = 300;
-    private static final OkHttpClient.Builder clientBuilder = clientBuilder();
+    private static final ThreadLocal<Consumer<Call>> callObserver = new ThreadLocal<>();
+    private static final ThreadLocal<String> currentProfile = new ThreadLocal<>();
+    //所有client由rootClient派生，共享连接池和Dispatcher
+    private static volatile OkHttpClient rootClient = rootClient();
+    //profile -> 对profile的client的定制（如独立的连接池、Dispatcher、超时时间）
+    private static final ConcurrentHashMap<String, UnaryOperator<OkHttpClient.Builder>> profiles = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, OkHttpClient> profileClients = new ConcurrentHashMap<>();
+    //profile:connectTimeout:readTimeout -> client
+    private static final ConcurrentHashMap<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, AtomicLong> createdClients = new ConcurrentHashMap<>();
+
     public static OkHttpClient defaultOkhttpClient() {
-        OkHttpClient.Builder builder = clientBuilder()
-                .connectTimeout(defaultConnectionTimeout, TimeUnit.SECONDS)
-                .readTimeout(defaultReadTimeout, TimeUnit.SECONDS);
-        return builder.build();
+        return client(DEFAULT_PROFILE, defaultConnectionTimeout, defaultReadTimeout);
     }
-    private static OkHttpClient.Builder clientBuilder() {
-        Dispatcher dispatcher = new Dispatcher(executorService);
-        dispatcher.setMaxRequests(2000);
-        dispatcher.setMaxRequestsPerHost(500);
+
+    private static OkHttpClient rootClient() {
         return new OkHttpClient.Builder()
                 .proxySelector(ProxyUtils.getProxySelector())
                 .connectionPool(connectionPool)
-                .dispatcher(dispatcher)
-                .pingInterval(30, TimeUnit.SECONDS);
+                .dispatcher(dispatcher(2000, 500))
+                .pingInterval(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 使用共享线程池的Dispatcher，超过上限的异步请求在Dispatcher中排队
+     */
+    public static Dispatcher dispatcher(int maxRequests, int maxRequestsPerHost) {
+        Dispatcher dispatcher = new Dispatcher(executorService);
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return dispatcher;
+    }
+
+    /**
+     * 当前线程指定的profile（未指定或未注册时为默认profile）的client
+     */
+    public static OkHttpClient client(int connectionTimeout, int readTimeout) {
+        String profile = currentProfile.get();
+        return client(profile == null || !profiles.containsKey(profile) ? DEFAULT_PROFILE : profile, connectionTimeout, readTimeout);
+    }
+
+    /**
+     * 按profile和超时时间复用的client，不可变，可在多线程间共享
+     */
+    public static OkHttpClient client(String profile, int connectionTimeout, int readTimeout) {
+        String key = profile + ":" + connectionTimeout + ":" + readTimeout;
+        OkHttpClient client = clients.get(key);
+        if(client == null) {
+            client = clients.computeIfAbsent(key, k -> {
+                createdClients.computeIfAbsent(profile, p -> new AtomicLong()).incrementAndGet();
+                OkHttpClient.Builder builder = profileClient(profile).newBuilder()
+                        .connectTimeout(connectionTimeout, TimeUnit.SECONDS)
+                        .readTimeout(readTimeout, TimeUnit.SECONDS);
+                //profile配置的超时时间优先
+                UnaryOperator<OkHttpClient.Builder> customizer = profiles.get(profile);
+                return (customizer == null ? builder : customizer.apply(builder)).build();
+            });
+        }
+        return client;
+    }
+
+    private static OkHttpClient profileClient(String profile) {
+        return profileClients.computeIfAbsent(profile, p -> {
+            UnaryOperator<OkHttpClient.Builder> customizer = profiles.get(p);
+            return customizer == null ? rootClient : customizer.apply(rootClient.newBuilder()).build();
+        });
+    }
+
+    /**
+     * 注册profile的client定制，已创建的该profile的client会被替换。
+     * 定制会应用到该profile的每个client上，连接池、Dispatcher等需要共享的资源应在定制外创建
+     */
+    public static void registerProfile(String profile, UnaryOperator<OkHttpClient.Builder> customizer) {
+        profiles.put(profile, customizer);
+        evictProfile(profile);
+    }
+
+    public static void unregisterProfile(String profile) {
+        profiles.remove(profile);
+        evictProfile(profile);
+    }
+
+    private static void evictProfile(String profile) {
+        profileClients.remove(profile);
+        clients.keySet().removeIf(key -> key.startsWith(profile + ":"));
+    }
+
+    /**
+     * 指定当前线程之后发起的请求使用的profile，用于按渠道隔离连接池和并发
+     */
+    public static void useProfile(String profile) {
+        currentProfile.set(profile);
+    }
+
+    public static void clearProfile() {
+        currentProfile.remove();
+    }
+
+    /**
+     * 各profile创建的client数及连接池、Dispatcher的状态
+     */
+    public static Map<String, ClientStats> stats() {
+        Map<String, ClientStats> stats = new HashMap<>();
+        profileClients.forEach((profile, client) -> stats.put(profile, new ClientStats(
+                createdClients.getOrDefault(profile, new AtomicLong()).get(),
+                client.connectionPool().connectionCount(),
+                client.connectionPool().idleConnectionCount(),
+                client.dispatcher().runningCallsCount(),
+                client.dispatcher().queuedCallsCount())));
+        return stats;
     }
 
     public static Response httpRequest(Request request, int connectionTimeout, int readTimeout) throws IOException {
-        return clientBuilder.connectTimeout(connectionTimeout, TimeUnit.SECONDS).readTimeout(readTimeout, TimeUnit.SECONDS)
-                .build().newCall(request).execute();
+        Call call = client(connectionTimeout, readTimeout).newCall(request);
+        Consumer<Call> observer = callObserver.get();
+        if(observer != null) {
+            observer.accept(call);
+        }
+        return call.execute();
+    }
+
+    /**
+     * 监听当前线程发起的同步请求，用于在其他线程取消请求（如对冲请求落败时）
+     */
+    public static void observeCalls(Consumer<Call> observer) {
+        callObserver.set(observer);
+    }
+
+    public static void clearCallObserver() {
+        callObserver.remove();
+    }
+
+    /**
+     * 设置请求事件监听（如统计连接、首包耗时），对之后发起的请求生效
+     */
+    public static synchronized void setEventListenerFactory(EventListener.Factory factory) {
+        rootClient = rootClient.newBuilder().eventListenerFactory(factory).build();
+        profileClients.clear();
+        clients.clear();
     }
 
     public static Response httpRequest(Request request) throws IOException {
@@ -73,8 +203,7 @@ public class HttpUtils {
     public static void streamRequest(Request request, BellaStreamCallback callback, int connectionTimeout, int readTimeout) {
         CompletableFuture<?> future = new CompletableFuture<>();
         callback.setConnectionInitFuture(future);
-        clientBuilder.connectTimeout(connectionTimeout, TimeUnit.SECONDS)
-                .readTimeout(readTimeout, TimeUnit.SECONDS).build().newCall(request).enqueue(callback);
+        client(connectionTimeout, readTimeout).newCall(request).enqueue(callback);
         try {
             future.get();
         } catch (InterruptedException interruptedException) {
@@ -91,8 +220,7 @@ public class HttpUtils {
     public static void streamRequest(Request request, BellaEventSourceListener listener, int connectionTimeout, int readTimeout) {
         CompletableFuture<?> future = new CompletableFuture<>();
         listener.setConnectionInitFuture(future);
-        EventSources.createFactory(clientBuilder.connectTimeout(connectionTimeout, TimeUnit.SECONDS)
-                .readTimeout(readTimeout, TimeUnit.SECONDS).build()).newEventSource(request, listener);
+        EventSources.createFactory(client(connectionTimeout, readTimeout)).newEventSource(request, listener);
         try {
             future.get();
         } catch (InterruptedException interruptedException) {
@@ -241,7 +369,7 @@ public class HttpUtils {
     public static WebSocket websocketRequest(Request request, BellaWebSocketListener listener) {
         CompletableFuture<?> future = new CompletableFuture<>();
         listener.setConnectionInitFuture(future);
-        WebSocket webSocket = defaultOkhttpClient().newWebSocket(request, listener);
+        WebSocket webSocket = client(defaultConnectionTimeout, defaultReadTimeout).newWebSocket(request, listener);
         try {
             future.get();
             return webSocket;
@@ -255,4 +383,14 @@ public class HttpUtils {
             throw new RuntimeException(e);
         }
     }
+
+    @Getter
+    @AllArgsConstructor
+    public static class ClientStats {
+        private final long created;
+        private final int connections;
+        private final int idleConnections;
+        private final int runningCalls;
+        private final int queuedCalls;
+    }
 }
@@ -0,0 +1,274 @@
+package com.ke.bella.openapi.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ke.bella.openapi.apikey.ApikeyInfo;
+
+/**
+ * 预编译的权限路径匹配器，匹配规则与AntPathMatcher一致（?、*、**、{name}、{name:regex}）。
+ * 路径模式在构建时按"/"拆分、每段编译为字面量或正则，匹配时url只拆分一次；最近的判定结果缓存在匹配器内。
+ * 相同的权限路径共享同一个匹配器，匹配器不可变，可在多线程间共享
+ */
+public class PermissionMatcher {
+    private static final int MAX_DECISIONS = 512;
+    private static final Pattern GLOB_PATTERN = Pattern.compile("\\?|\\*|\\{((?:\\{[^/]+?\\}|[^/{}]|\\\\[{}])+?)\\}");
+    private static final String DEFAULT_VARIABLE_PATTERN = "((?s).*)";
+    private static final Cache<ApikeyInfo.RolePath, PermissionMatcher> matchers = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    private final List<PathPattern> included;
+    private final List<PathPattern> excluded;
+    private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+    private PermissionMatcher(ApikeyInfo.RolePath rolePath) {
+        this.included = compile(rolePath.getIncluded());
+        this.excluded = compile(rolePath.getExcluded());
+    }
+
+    public static PermissionMatcher of(ApikeyInfo.RolePath rolePath) {
+        return matchers.get(rolePath, PermissionMatcher::new);
+    }
+
+    public boolean matches(String url) {
+        Boolean decision = decisions.get(url);
+        if(decision == null) {
+            decision = match(url);
+            if(decisions.size() >= MAX_DECISIONS) {
+                decisions.clear();
+            }
+            decisions.put(url, decision);
+        }
+        return decision;
+    }
+
+    private boolean match(String url) {
+        String[] dirs = tokenize(url);
+        boolean permitted = false;
+        for (PathPattern pattern : included) {
+            if(pattern.matches(url, dirs)) {
+                permitted = true;
+                break;
+            }
+        }
+        if(!permitted) {
+            return false;
+        }
+        for (PathPattern pattern : excluded) {
+            if(pattern.matches(url, dirs)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<PathPattern> compile(List<String> patterns) {
+        if(patterns == null || patterns.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<PathPattern> result = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            if(pattern != null) {
+                result.add(new PathPattern(pattern));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按"/"拆分并忽略空段，与AntPathMatcher的默认拆分方式一致
+     */
+    private static String[] tokenize(String path) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if(i == path.length() || path.charAt(i) == '/') {
+                if(i > start) {
+                    tokens.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    private static class PathPattern {
+        private final boolean absolute;
+        private final boolean trailingSlash;
+        private final String[] dirs;
+        private final Segment[] segments;
+
+        PathPattern(String pattern) {
+            this.absolute = pattern.startsWith("/");
+            this.trailingSlash = pattern.endsWith("/");
+            this.dirs = tokenize(pattern);
+            this.segments = new Segment[dirs.length];
+            for (int i = 0; i < dirs.length; i++) {
+                segments[i] = new Segment(dirs[i]);
+            }
+        }
+
+        /**
+         * AntPathMatcher.doMatch的完整匹配部分
+         */
+        boolean matches(String path, String[] pathDirs) {
+            if(path.startsWith("/") != absolute) {
+                return false;
+            }
+            int pattIdxStart = 0;
+            int pattIdxEnd = dirs.length - 1;
+            int pathIdxStart = 0;
+            int pathIdxEnd = pathDirs.length - 1;
+
+            //匹配第一个**之前的部分
+            while (pattIdxStart <= pattIdxEnd && pathIdxStart <= pathIdxEnd) {
+                if(segments[pattIdxStart].multi) {
+                    break;
+                }
+                if(!segments[pattIdxStart].matches(pathDirs[pathIdxStart])) {
+                    return false;
+                }
+                pattIdxStart++;
+                pathIdxStart++;
+            }
+
+            if(pathIdxStart > pathIdxEnd) {
+                //路径已匹配完，剩余的模式只能是*或**
+                if(pattIdxStart > pattIdxEnd) {
+                    return trailingSlash == path.endsWith("/");
+                }
+                if(pattIdxStart == pattIdxEnd && dirs[pattIdxStart].equals("*") && path.endsWith("/")) {
+                    return true;
+                }
+                return onlyMulti(pattIdxStart, pattIdxEnd);
+            } else if(pattIdxStart > pattIdxEnd) {
+                return false;
+            }
+
+            //匹配最后一个**之后的部分
+            while (pattIdxStart <= pattIdxEnd && pathIdxStart <= pathIdxEnd) {
+                if(segments[pattIdxEnd].multi) {
+                    break;
+                }
+                if(!segments[pattIdxEnd].matches(pathDirs[pathIdxEnd])) {
+                    return false;
+                }
+                if(pattIdxEnd == dirs.length - 1 && trailingSlash != path.endsWith("/")) {
+                    return false;
+                }
+                pattIdxEnd--;
+                pathIdxEnd--;
+            }
+            if(pathIdxStart > pathIdxEnd) {
+                return onlyMulti(pattIdxStart, pattIdxEnd);
+            }
+
+            //两个**之间的部分在路径中查找
+            while (pattIdxStart != pattIdxEnd && pathIdxStart <= pathIdxEnd) {
+                int patIdxTmp = -1;
+                for (int i = pattIdxStart + 1; i <= pattIdxEnd; i++) {
+                    if(segments[i].multi) {
+                        patIdxTmp = i;
+                        break;
+                    }
+                }
+                if(patIdxTmp == pattIdxStart + 1) {
+                    //连续的**
+                    pattIdxStart++;
+                    continue;
+                }
+                int patLength = patIdxTmp - pattIdxStart - 1;
+                int strLength = pathIdxEnd - pathIdxStart + 1;
+                int foundIdx = -1;
+                strLoop:
+                for (int i = 0; i <= strLength - patLength; i++) {
+                    for (int j = 0; j < patLength; j++) {
+                        if(!segments[pattIdxStart + j + 1].matches(pathDirs[pathIdxStart + i + j])) {
+                            continue strLoop;
+                        }
+                    }
+                    foundIdx = pathIdxStart + i;
+                    break;
+                }
+                if(foundIdx == -1) {
+                    return false;
+                }
+                pattIdxStart = patIdxTmp;
+                pathIdxStart = foundIdx + patLength;
+            }
+            return onlyMulti(pattIdxStart, pattIdxEnd);
+        }
+
+        private boolean onlyMulti(int from, int to) {
+            for (int i = from; i <= to; i++) {
+                if(!segments[i].multi) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 路径中的一段：**、字面量或通配符编译后的正则
+     */
+    private static class Segment {
+        private final boolean multi;
+        private final String literal;
+        private final Pattern pattern;
+
+        Segment(String dir) {
+            this.multi = dir.equals("**");
+            Matcher matcher = GLOB_PATTERN.matcher(dir);
+            if(multi || !matcher.find()) {
+                this.literal = dir;
+                this.pattern = null;
+                return;
+            }
+            matcher.reset();
+            StringBuilder regex = new StringBuilder();
+            int end = 0;
+            while (matcher.find()) {
+                regex.append(quote(dir, end, matcher.start()));
+                String match = matcher.group();
+                if("?".equals(match)) {
+                    regex.append('.');
+                } else if("*".equals(match)) {
+                    regex.append(".*");
+                } else {
+                    int colonIdx = match.indexOf(':');
+                    if(colonIdx == -1) {
+                        regex.append(DEFAULT_VARIABLE_PATTERN);
+                    } else {
+                        regex.append('(').append(match, colonIdx + 1, match.length() - 1).append(')');
+                    }
+                }
+                end = matcher.end();
+            }
+            regex.append(quote(dir, end, dir.length()));
+            this.literal = null;
+            this.pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        boolean matches(String dir) {
+            if(pattern == null) {
+                return literal.equals(dir);
+            }
+            return pattern.matcher(dir).matches();
+        }
+
+        private static String quote(String s, int start, int end) {
+            return start == end ? "" : Pattern.quote(s.substring(start, end));
+        }
+    }
+}
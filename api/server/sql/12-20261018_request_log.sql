@@ -0,0 +1,28 @@
+SET NAMES utf8mb4;
+create table request_log
+(
+    id                 bigint(20) not null auto_increment comment '主键ID',
+    request_id         varchar(64)    default ''                not null comment '请求id',
+    ak_code            varchar(64)    default ''                not null comment 'ak编码',
+    parent_ak_code     varchar(64)    default ''                not null comment '父ak编码',
+    account_type       varchar(16)    default ''                not null comment '账户类型',
+    account_code       varchar(64)    default ''                not null comment '账户编码',
+    endpoint           varchar(64)    default ''                not null comment '能力点',
+    model              varchar(64)    default ''                not null comment '模型',
+    channel_code       varchar(64)    default ''                not null comment '渠道编码',
+    supplier           varchar(64)    default ''                not null comment '供应商',
+    http_code          int(11)        default 0                 not null comment '响应状态码',
+    request_time       bigint(20)     default 0                 not null comment '请求时间（秒）',
+    first_package_time bigint(20)     default 0                 not null comment '首包时间（毫秒）',
+    duration           bigint(20)     default 0                 not null comment '耗时（毫秒）',
+    cost               DECIMAL(12, 4) default 0                 not null comment '花费（分）',
+    usage_info         varchar(1024)  default ''                not null comment '用量',
+    error_message      varchar(512)   default ''                not null comment '错误信息',
+    bella_trace_id     varchar(64)    default ''                not null comment 'traceId',
+    request_body       mediumtext                                   null comment '请求体，默认不记录',
+    ctime              timestamp      default CURRENT_TIMESTAMP not null,
+    primary key (id),
+    key                `idx_request_id` (`request_id`),
+    key                `idx_ak_code_ctime` (`ak_code`, `ctime`),
+    key                `idx_ctime` (`ctime`)
+)engine=InnoDB default charset=utf8mb4 comment='请求日志';
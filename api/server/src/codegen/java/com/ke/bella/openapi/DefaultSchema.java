@@ -14,6 +14,7 @@ import com.ke.bella.openapi.tables.EndpointCategoryRel;
 import com.ke.bella.openapi.tables.Model;
 import com.ke.bella.openapi.tables.ModelAuthorizerRel;
 import com.ke.bella.openapi.tables.ModelEndpointRel;
+import com.ke.bella.openapi.tables.RequestLog;
 import com.ke.bella.openapi.tables.Space;
 import com.ke.bella.openapi.tables.SpaceMember;
 import com.ke.bella.openapi.tables.SpaceRole;
@@ -90,6 +91,11 @@ public class DefaultSchema extends SchemaImpl {
      */
     public final ModelEndpointRel MODEL_ENDPOINT_REL = ModelEndpointRel.MODEL_ENDPOINT_REL;
 
+    /**
+     * 请求日志
+     */
+    public final RequestLog REQUEST_LOG = RequestLog.REQUEST_LOG;
+
     /**
      * 空间表
      */
@@ -136,6 +142,7 @@ public class DefaultSchema extends SchemaImpl {
             Model.MODEL,
             ModelAuthorizerRel.MODEL_AUTHORIZER_REL,
             ModelEndpointRel.MODEL_ENDPOINT_REL,
+            RequestLog.REQUEST_LOG,
             Space.SPACE,
             SpaceMember.SPACE_MEMBER,
             SpaceRole.SPACE_ROLE,
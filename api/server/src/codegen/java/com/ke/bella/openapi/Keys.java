@@ -14,6 +14,7 @@ import com.ke.bella.openapi.tables.EndpointCategoryRel;
 import com.ke.bella.openapi.tables.Model;
 import com.ke.bella.openapi.tables.ModelAuthorizerRel;
 import com.ke.bella.openapi.tables.ModelEndpointRel;
+import com.ke.bella.openapi.tables.RequestLog;
 import com.ke.bella.openapi.tables.Space;
 import com.ke.bella.openapi.tables.SpaceMember;
 import com.ke.bella.openapi.tables.SpaceRole;
@@ -28,6 +29,7 @@ import com.ke.bella.openapi.tables.records.EndpointRecord;
 import com.ke.bella.openapi.tables.records.ModelAuthorizerRelRecord;
 import com.ke.bella.openapi.tables.records.ModelEndpointRelRecord;
 import com.ke.bella.openapi.tables.records.ModelRecord;
+import com.ke.bella.openapi.tables.records.RequestLogRecord;
 import com.ke.bella.openapi.tables.records.SpaceMemberRecord;
 import com.ke.bella.openapi.tables.records.SpaceRecord;
 import com.ke.bella.openapi.tables.records.SpaceRoleRecord;
@@ -73,6 +75,7 @@ public class Keys {
     public static final UniqueKey<ModelAuthorizerRelRecord> KEY_MODEL_AUTHORIZER_REL_UNIQ_IDX_UNI_MODEL_NAME_AUTHORIZER_CODE = Internal.createUniqueKey(ModelAuthorizerRel.MODEL_AUTHORIZER_REL, DSL.name("KEY_model_authorizer_rel_uniq_idx_uni_model_name_authorizer_code"), new TableField[] { ModelAuthorizerRel.MODEL_AUTHORIZER_REL.MODEL_NAME, ModelAuthorizerRel.MODEL_AUTHORIZER_REL.AUTHORIZER_CODE }, true);
     public static final UniqueKey<ModelEndpointRelRecord> KEY_MODEL_ENDPOINT_REL_PRIMARY = Internal.createUniqueKey(ModelEndpointRel.MODEL_ENDPOINT_REL, DSL.name("KEY_model_endpoint_rel_PRIMARY"), new TableField[] { ModelEndpointRel.MODEL_ENDPOINT_REL.ID }, true);
     public static final UniqueKey<ModelEndpointRelRecord> KEY_MODEL_ENDPOINT_REL_UNIQ_IDX_UNI_ENDPOINT_MODEL = Internal.createUniqueKey(ModelEndpointRel.MODEL_ENDPOINT_REL, DSL.name("KEY_model_endpoint_rel_uniq_idx_uni_endpoint_model"), new TableField[] { ModelEndpointRel.MODEL_ENDPOINT_REL.ENDPOINT, ModelEndpointRel.MODEL_ENDPOINT_REL.MODEL_NAME }, true);
+    public static final UniqueKey<RequestLogRecord> KEY_REQUEST_LOG_PRIMARY = Internal.createUniqueKey(RequestLog.REQUEST_LOG, DSL.name("KEY_request_log_PRIMARY"), new TableField[] { RequestLog.REQUEST_LOG.ID }, true);
     public static final UniqueKey<SpaceRecord> KEY_SPACE_PRIMARY = Internal.createUniqueKey(Space.SPACE, DSL.name("KEY_space_PRIMARY"), new TableField[] { Space.SPACE.ID }, true);
     public static final UniqueKey<SpaceRecord> KEY_SPACE_UNIQ_IDX_SPACE_CODE = Internal.createUniqueKey(Space.SPACE, DSL.name("KEY_space_uniq_idx_space_code"), new TableField[] { Space.SPACE.SPACE_CODE }, true);
     public static final UniqueKey<SpaceMemberRecord> KEY_SPACE_MEMBER_PRIMARY = Internal.createUniqueKey(SpaceMember.SPACE_MEMBER, DSL.name("KEY_space_member_PRIMARY"), new TableField[] { SpaceMember.SPACE_MEMBER.ID }, true);
@@ -14,6 +14,7 @@ import com.ke.bella.openapi.tables.EndpointCategoryRel;
 import com.ke.bella.openapi.tables.Model;
 import com.ke.bella.openapi.tables.ModelAuthorizerRel;
 import com.ke.bella.openapi.tables.ModelEndpointRel;
+import com.ke.bella.openapi.tables.RequestLog;
 import com.ke.bella.openapi.tables.Space;
 import com.ke.bella.openapi.tables.SpaceMember;
 import com.ke.bella.openapi.tables.SpaceRole;
@@ -76,6 +77,11 @@ public class Tables {
      */
     public static final ModelEndpointRel MODEL_ENDPOINT_REL = ModelEndpointRel.MODEL_ENDPOINT_REL;
 
+    /**
+     * 请求日志
+     */
+    public static final RequestLog REQUEST_LOG = RequestLog.REQUEST_LOG;
+
     /**
      * 空间表
      */
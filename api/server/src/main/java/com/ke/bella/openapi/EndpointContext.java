@@ -9,7 +9,9 @@ import org.springframework.web.util.ContentCachingRequestWrapper;
 
 import com.ke.bella.openapi.apikey.ApikeyInfo;
 import com.ke.bella.openapi.common.EntityConstants;
+import com.ke.bella.openapi.protocol.ChannelBulkheads;
 import com.ke.bella.openapi.tables.pojos.ChannelDB;
+import com.ke.bella.openapi.utils.HttpUtils;
 
 public class EndpointContext {
     private static final ThreadLocal<EndpointProcessData> endpointRequestInfo = new ThreadLocal<>();
@@ -29,6 +31,17 @@ public class EndpointContext {
         return endpointRequestInfo.get();
     }
 
+    /**
+     * 当前线程没有请求上下文时返回null，不会创建
+     */
+    public static EndpointProcessData peekProcessData() {
+        return endpointRequestInfo.get();
+    }
+
+    public static void setProcessData(EndpointProcessData processData) {
+        endpointRequestInfo.set(processData);
+    }
+
 
     public static ContentCachingRequestWrapper getRequest() {
         Assert.notNull(requestCache.get(), "requestCache is empty");
@@ -61,6 +74,7 @@ public class EndpointContext {
         EndpointContext.getProcessData().setProtocol(channel.getProtocol());
         EndpointContext.getProcessData().setPriceInfo(channel.getPriceInfo());
         EndpointContext.getProcessData().setSupplier(channel.getSupplier());
+        useChannelProfile(channel);
     }
 
     public static void setEndpointData(String endpoint, String model, Object request) {
@@ -76,6 +90,14 @@ public class EndpointContext {
         EndpointContext.getProcessData().setProtocol(channel.getProtocol());
         EndpointContext.getProcessData().setPriceInfo(channel.getPriceInfo());
         EndpointContext.getProcessData().setSupplier(channel.getSupplier());
+        useChannelProfile(channel);
+    }
+
+    /**
+     * 之后发起的上游请求使用渠道隔离舱的client，渠道没有配置隔离舱时使用默认client
+     */
+    private static void useChannelProfile(ChannelDB channel) {
+        HttpUtils.useProfile(ChannelBulkheads.profile(channel.getChannelCode()));
     }
 
     public static void setEncodingType(String encodingType) {
@@ -96,6 +118,7 @@ public class EndpointContext {
     public static void clearAll() {
         endpointRequestInfo.remove();
         requestCache.remove();
+        HttpUtils.clearProfile();
         BellaContext.clearAll();
     }
 
@@ -4,7 +4,9 @@ import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class TaskExecutor {
@@ -17,6 +19,10 @@ public class TaskExecutor {
         return CompletableFuture.runAsync(r, executor);
     }
 
+    public static ScheduledFuture<?> schedule(Runnable r, long delayMillis) {
+        return executor.schedule(r, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
     public static class NamedThreadFactory implements ThreadFactory {
         private final String prefix;
         private final AtomicInteger threadNumber = new AtomicInteger(1);
@@ -1,10 +1,14 @@
 package com.ke.bella.openapi.configuration;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -13,30 +17,71 @@ import com.ke.bella.openapi.protocol.AdaptorManager;
 import com.ke.bella.openapi.protocol.IProtocolAdaptor;
 import com.ke.bella.openapi.protocol.cost.CostCounter;
 import com.ke.bella.openapi.protocol.limiter.LimiterManager;
+import com.ke.bella.openapi.protocol.limiter.SpendTracker;
+import com.ke.bella.openapi.protocol.limiter.TpmLimiter;
 import com.ke.bella.openapi.protocol.log.CostLogHandler;
+import com.ke.bella.openapi.protocol.log.EndpointLogHandler;
+import com.ke.bella.openapi.protocol.log.JournalAckHandler;
+import com.ke.bella.openapi.protocol.log.JournalWriteHandler;
 import com.ke.bella.openapi.protocol.log.LimiterLogHandler;
 import com.ke.bella.openapi.protocol.log.LogEvent;
 import com.ke.bella.openapi.protocol.log.LogExceptionHandler;
+import com.ke.bella.openapi.protocol.log.LogJournal;
+import com.ke.bella.openapi.protocol.log.LogProcessHandler;
 import com.ke.bella.openapi.protocol.log.LogRecordHandler;
 import com.ke.bella.openapi.protocol.log.MetricsLogHandler;
 import com.ke.bella.openapi.protocol.metrics.MetricsManager;
 import com.ke.bella.openapi.service.ApikeyService;
 import com.ke.bella.openapi.service.EndpointService;
+import com.ke.bella.openapi.utils.StageMetrics;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.EventHandlerGroup;
 import com.lmax.disruptor.dsl.ProducerType;
 import com.lmax.disruptor.util.DaemonThreadFactory;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 public class BellaAutoConf {
-    private final SleepingWaitStrategy sleepingWaitStrategy = new SleepingWaitStrategy();
     private Disruptor<LogEvent> logDisruptor;
     private CostCounter costCounter;
     @Autowired
     private MetricsManager metricsManager;
     @Autowired
     private LimiterManager limiterManager;
+    @Autowired
+    private TpmLimiter tpmLimiter;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private LogJournal logJournal;
+    @Autowired
+    private SpendTracker spendTracker;
+    //必须为2的幂
+    @Value("${bella.openapi.log.ring-size:1024}")
+    private int logRingSize;
+    //sleeping（默认，低CPU占用）、blocking、yielding、busy-spin（低延迟，独占CPU）
+    @Value("${bella.openapi.log.wait-strategy:sleeping}")
+    private String logWaitStrategy;
+    //日志后处理（token计数等）的并行worker数
+    @Value("${bella.openapi.log.process-workers:4}")
+    private int logProcessWorkers;
+    //计费分片数，按akCode分片并行计算
+    @Value("${bella.openapi.log.cost-shards:2}")
+    private int costShards;
+
+    @PostConstruct
+    public void bindStageMetrics() {
+        StageMetrics.bind(meterRegistry);
+    }
+
     @Bean
     public AdaptorManager adaptorManager(@Autowired List<IProtocolAdaptor> adaptors) {
         AdaptorManager manager = new AdaptorManager();
@@ -46,7 +91,17 @@ public class BellaAutoConf {
 
     @Bean
     public CostCounter.CostRecorder costRecorder(@Autowired ApikeyService service) {
-        return service::recordCost;
+        return new CostCounter.CostRecorder() {
+            @Override
+            public void recordCost(String apikey, String month, BigDecimal cost) {
+                service.recordCost(apikey, month, cost);
+            }
+
+            @Override
+            public void recordCosts(String month, Map<String, BigDecimal> costs) {
+                service.recordCosts(month, costs);
+            }
+        };
     }
 
     @Bean
@@ -56,20 +111,59 @@ public class BellaAutoConf {
 
     @Bean
     public CostCounter costCounter(CostCounter.CostRecorder costRecorder) {
-        costCounter = new CostCounter(costRecorder);
+        costCounter = new CostCounter(costRecorder, journalOffsets -> {
+            logJournal.ack(LogJournal.STAGE_COST, journalOffsets);
+            logJournal.checkpoint(LogJournal.STAGE_COST);
+        }, meterRegistry, spendTracker);
         return costCounter;
     }
 
     @Bean
-    public RingBuffer<LogEvent> logRingBuffer(List<LogRepo> logRepos, CostCounter costCounter, CostLogHandler.CostScripFetcher costScripFetcher) {
-        Disruptor<LogEvent> disruptor = new Disruptor<>(LogEvent::new, 1024,
-                DaemonThreadFactory.INSTANCE, ProducerType.MULTI, sleepingWaitStrategy);
-        disruptor.handleEventsWith(new CostLogHandler(costCounter, costScripFetcher)).then(new LogRecordHandler(logRepos));
-        disruptor.handleEventsWith(new MetricsLogHandler(metricsManager), new LimiterLogHandler(limiterManager));
+    public RingBuffer<LogEvent> logRingBuffer(List<LogRepo> logRepos, List<EndpointLogHandler> logHandlers, CostCounter costCounter,
+            CostLogHandler.CostScripFetcher costScripFetcher) {
+        Disruptor<LogEvent> disruptor = new Disruptor<>(LogEvent::new, logRingSize,
+                DaemonThreadFactory.INSTANCE, ProducerType.MULTI, waitStrategy(logWaitStrategy));
+        LogProcessHandler[] logProcessHandlers = new LogProcessHandler[logProcessWorkers];
+        for (int i = 0; i < logProcessWorkers; i++) {
+            logProcessHandlers[i] = new LogProcessHandler(logHandlers);
+        }
+        CostLogHandler[] costLogHandlers = new CostLogHandler[costShards];
+        for (int i = 0; i < costShards; i++) {
+            costLogHandlers[i] = new CostLogHandler(costCounter, costScripFetcher, i, costShards);
+        }
+        LogRecordHandler logRecordHandler = new LogRecordHandler(logRepos, meterRegistry);
+        //消费者启动前重放上次未处理完的事件，重放的费用刷写成功后才确认并保存计费阶段的检查点
+        logJournal.recover(logProcessHandlers[0], new CostLogHandler(costCounter, costScripFetcher), logRecordHandler);
+        costCounter.flush();
+        //写入预写日志 -> 后处理，完成后计费（分片并行）->日志记录与指标、限流两条链并行
+        EventHandlerGroup<LogEvent> processed = disruptor.handleEventsWith(new JournalWriteHandler(logJournal))
+                .thenHandleEventsWithWorkerPool(logProcessHandlers);
+        processed.then(costLogHandlers).then(logRecordHandler)
+                .then(new JournalAckHandler(logJournal, LogJournal.STAGE_RECORD));
+        processed.then(new MetricsLogHandler(metricsManager, meterRegistry),
+                new LimiterLogHandler(limiterManager, tpmLimiter, meterRegistry));
         disruptor.setDefaultExceptionHandler(new LogExceptionHandler());
         disruptor.start();
         logDisruptor = disruptor;
-        return disruptor.getRingBuffer();
+        RingBuffer<LogEvent> ringBuffer = disruptor.getRingBuffer();
+        Gauge.builder("bella.log.ringbuffer.remaining", ringBuffer, RingBuffer::remainingCapacity).register(meterRegistry);
+        Gauge.builder("bella.log.ringbuffer.occupancy", ringBuffer, rb -> rb.getBufferSize() - rb.remainingCapacity()).register(meterRegistry);
+        return ringBuffer;
+    }
+
+    private static WaitStrategy waitStrategy(String name) {
+        switch (name) {
+        case "blocking":
+            return new BlockingWaitStrategy();
+        case "yielding":
+            return new YieldingWaitStrategy();
+        case "busy-spin":
+            return new BusySpinWaitStrategy();
+        case "sleeping":
+            return new SleepingWaitStrategy();
+        default:
+            throw new IllegalArgumentException("unknown wait strategy: " + name);
+        }
     }
 
     @PreDestroy
@@ -80,5 +174,6 @@ public class BellaAutoConf {
         if(costCounter != null) {
             costCounter.flush();
         }
+        logJournal.checkpoint(LogJournal.STAGE_RECORD);
     }
 }
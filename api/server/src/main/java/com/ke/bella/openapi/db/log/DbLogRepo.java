@@ -0,0 +1,85 @@
+package com.ke.bella.openapi.db.log;
+
+import static com.ke.bella.openapi.Tables.REQUEST_LOG;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jooq.DSLContext;
+import org.jooq.InsertSetMoreStep;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.Lists;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.protocol.OpenapiResponse;
+import com.ke.bella.openapi.tables.records.RequestLogRecord;
+import com.ke.bella.openapi.utils.JacksonUtils;
+
+/**
+ * 请求日志写入request_log表：每批按batch-size拆分为多行insert，单条日志只保留查询所需的字段，
+ * 请求体默认不记录。批次由LogRecordHandler在Disruptor批次结束时提交，写入延迟不超过一个批次的处理时间
+ */
+@Component
+@ConditionalOnProperty(name = "bella.openapi.log.db.enabled", havingValue = "true")
+public class DbLogRepo implements LogRepo {
+    private static final int USAGE_MAX_LENGTH = 1024;
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 512;
+    @Resource
+    private DSLContext db;
+    @Value("${bella.openapi.log.db.batch-size:200}")
+    private int batchSize;
+    @Value("${bella.openapi.log.db.record-request:false}")
+    private boolean recordRequest;
+
+    @Override
+    public void record(EndpointProcessData log) {
+        recordBatch(Collections.singletonList(log));
+    }
+
+    @Override
+    public void recordBatch(List<EndpointProcessData> logs) {
+        for (List<EndpointProcessData> partition : Lists.partition(logs, batchSize)) {
+            InsertSetMoreStep<RequestLogRecord> insert = null;
+            for (EndpointProcessData log : partition) {
+                RequestLogRecord rec = toRecord(log);
+                insert = insert == null ? db.insertInto(REQUEST_LOG).set(rec) : insert.newRecord().set(rec);
+            }
+            if(insert != null) {
+                insert.execute();
+            }
+        }
+    }
+
+    private RequestLogRecord toRecord(EndpointProcessData log) {
+        OpenapiResponse.OpenapiError error = log.getResponse() == null ? null : log.getResponse().getError();
+        RequestLogRecord rec = REQUEST_LOG.newRecord();
+        rec.setRequestId(StringUtils.defaultString(log.getRequestId()));
+        rec.setAkCode(StringUtils.defaultString(log.getAkCode()));
+        rec.setParentAkCode(StringUtils.defaultString(log.getParentAkCode()));
+        rec.setAccountType(StringUtils.defaultString(log.getAccountType()));
+        rec.setAccountCode(StringUtils.defaultString(log.getAccountCode()));
+        rec.setEndpoint(StringUtils.defaultString(log.getEndpoint()));
+        rec.setModel(StringUtils.defaultString(log.getModel()));
+        rec.setChannelCode(StringUtils.defaultString(log.getChannelCode()));
+        rec.setSupplier(StringUtils.defaultString(log.getSupplier()));
+        rec.setHttpCode(error == null || error.getHttpCode() == null ? 200 : error.getHttpCode());
+        rec.setRequestTime(log.getRequestTime());
+        rec.setFirstPackageTime(log.getFirstPackageTime());
+        rec.setDuration(log.getDuration());
+        rec.setCost(log.getCost() == null ? BigDecimal.ZERO : log.getCost());
+        rec.setUsageInfo(log.getUsage() == null ? "" : StringUtils.left(JacksonUtils.serialize(log.getUsage()), USAGE_MAX_LENGTH));
+        rec.setErrorMessage(error == null ? "" : StringUtils.left(StringUtils.defaultString(error.getMessage()), ERROR_MESSAGE_MAX_LENGTH));
+        rec.setBellaTraceId(StringUtils.defaultString(log.getBellaTraceId()));
+        //多行insert的各行字段需一致，开启时每行都写入
+        if(recordRequest) {
+            rec.setRequestBody(log.getRequest() == null ? "" : JacksonUtils.serialize(log.getRequest()));
+        }
+        return rec;
+    }
+}
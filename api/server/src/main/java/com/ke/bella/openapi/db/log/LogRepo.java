@@ -2,6 +2,15 @@ package com.ke.bella.openapi.db.log;
 
 import com.ke.bella.openapi.EndpointProcessData;
 
+import java.util.List;
+
 public interface LogRepo {
     void record(EndpointProcessData log);
+
+    /**
+     * 批量记录，LogRecordHandler在Disruptor批次结束或达到最大批量时调用；默认逐条记录
+     */
+    default void recordBatch(List<EndpointProcessData> logs) {
+        logs.forEach(this::record);
+    }
 }
@@ -3,14 +3,20 @@ package com.ke.bella.openapi.db.repo;
 import static com.ke.bella.openapi.Tables.*;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Resource;
 
 import org.jooq.DSLContext;
+import org.jooq.InsertSetMoreStep;
+import org.jooq.impl.DSL;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Iterables;
 import com.ke.bella.openapi.tables.pojos.ApikeyMonthCostDB;
 import com.ke.bella.openapi.tables.records.ApikeyMonthCostRecord;
 
@@ -40,6 +46,44 @@ public class ApikeyCostRepo implements BaseRepo {
                 .execute();
     }
 
+    /**
+     * 批量累加费用：每batchSize个ak一条insert ... on duplicate key update amount = amount + values(amount)
+     *
+     * @return 写入的ak数
+     */
+    @Transactional
+    public int batchIncrement(String month, Map<String, BigDecimal> costs, int batchSize) {
+        int rows = 0;
+        for (List<Map.Entry<String, BigDecimal>> partition : Iterables.partition(costs.entrySet(), batchSize)) {
+            InsertSetMoreStep<ApikeyMonthCostRecord> insert = null;
+            for (Map.Entry<String, BigDecimal> cost : partition) {
+                ApikeyMonthCostRecord rec = APIKEY_MONTH_COST.newRecord();
+                rec.setAkCode(cost.getKey());
+                rec.setMonth(month);
+                rec.setAmount(cost.getValue());
+                insert = insert == null ? db.insertInto(APIKEY_MONTH_COST).set(rec) : insert.newRecord().set(rec);
+            }
+            insert.onDuplicateKeyUpdate()
+                    .set(APIKEY_MONTH_COST.AMOUNT, APIKEY_MONTH_COST.AMOUNT.add(
+                            DSL.field("values({0})", BigDecimal.class, DSL.name(APIKEY_MONTH_COST.AMOUNT.getName()))))
+                    .execute();
+            rows += partition.size();
+        }
+        return rows;
+    }
+
+    public Map<String, BigDecimal> queryCosts(Collection<String> akCodes, String month, int batchSize) {
+        Map<String, BigDecimal> result = new HashMap<>();
+        for (List<String> partition : Iterables.partition(akCodes, batchSize)) {
+            result.putAll(db.select(APIKEY_MONTH_COST.AK_CODE, APIKEY_MONTH_COST.AMOUNT)
+                    .from(APIKEY_MONTH_COST)
+                    .where(APIKEY_MONTH_COST.AK_CODE.in(partition))
+                    .and(APIKEY_MONTH_COST.MONTH.eq(month))
+                    .fetchMap(APIKEY_MONTH_COST.AK_CODE, APIKEY_MONTH_COST.AMOUNT));
+        }
+        return result;
+    }
+
     public BigDecimal queryCost(String akCode, String month) {
         return db.select(APIKEY_MONTH_COST.AMOUNT)
                 .from(APIKEY_MONTH_COST)
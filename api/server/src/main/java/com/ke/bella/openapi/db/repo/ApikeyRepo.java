@@ -36,6 +36,16 @@ public class ApikeyRepo extends StatusRepo<ApikeyDB, ApikeyRecord, String> imple
                 .fetchOneInto(ApikeyInfo.class);
     }
 
+    /**
+     * ak及其子ak的sha
+     */
+    public List<String> listShaWithChildren(String code) {
+        return db.select(APIKEY.AK_SHA).from(APIKEY)
+                .where(APIKEY.CODE.eq(code))
+                .or(APIKEY.PARENT_CODE.eq(code))
+                .fetchInto(String.class);
+    }
+
     public void updateRoleBySha(String sha, String roleCode) {
         db.update(APIKEY)
                 .set(APIKEY.ROLE_CODE, roleCode)
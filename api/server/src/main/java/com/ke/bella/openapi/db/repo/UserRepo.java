@@ -17,6 +17,7 @@ import com.ke.bella.openapi.Operator;
 import com.ke.bella.openapi.apikey.ApikeyInfo;
 import com.ke.bella.openapi.common.EntityConstants;
 import com.ke.bella.openapi.login.user.IUserRepo;
+import com.ke.bella.openapi.service.ApikeyService;
 import com.ke.bella.openapi.tables.pojos.UserDB;
 import com.ke.bella.openapi.tables.records.UserRecord;
 import com.ke.bella.openapi.utils.EncryptUtils;
@@ -30,6 +31,9 @@ public class UserRepo implements IUserRepo {
     @Autowired
     private ApikeyRepo apikeyRepo;
 
+    @Autowired
+    private ApikeyService apikeyService;
+
     public UserRepo(DSLContext dsl) {
         this.dsl = dsl;
     }
@@ -140,6 +144,7 @@ public class UserRepo implements IUserRepo {
 
     private void updateApikeyRoles(String apikey) {
         String sha = EncryptUtils.sha256(apikey);
-        apikeyRepo.updateRoleBySha(sha, EntityConstants.MANAGER_ROLE);
+        //经过ApikeyService更新，同时失效鉴权缓存
+        apikeyService.updateRoleBySha(sha, EntityConstants.MANAGER_ROLE);
     }
 }
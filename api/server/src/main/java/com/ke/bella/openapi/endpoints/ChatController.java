@@ -16,6 +16,8 @@ import com.ke.bella.openapi.EndpointContext;
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.annotations.EndpointAPI;
 import com.ke.bella.openapi.protocol.AdaptorManager;
+import com.ke.bella.openapi.protocol.ChannelFailover;
+import com.ke.bella.openapi.protocol.ChannelHedger;
 import com.ke.bella.openapi.protocol.ChannelRouter;
 import com.ke.bella.openapi.protocol.completion.CompletionAdaptor;
 import com.ke.bella.openapi.protocol.completion.CompletionProperty;
@@ -32,6 +34,7 @@ import com.ke.bella.openapi.service.JobQueueService;
 import com.ke.bella.openapi.tables.pojos.ChannelDB;
 import com.ke.bella.openapi.utils.JacksonUtils;
 import com.ke.bella.openapi.utils.SseHelper;
+import com.ke.bella.openapi.utils.StageMetrics;
 
 import io.swagger.v3.oas.annotations.tags.Tag;
 
@@ -52,7 +55,10 @@ public class ChatController {
     private ISafetyCheckService.IChatSafetyCheckService safetyCheckService;
     @Autowired
     private JobQueueService jobQueueService;
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Autowired
+    private ChannelFailover failover;
+    @Autowired
+    private ChannelHedger hedger;
     @PostMapping("/completions")
     public Object completion(@RequestBody CompletionRequest request) {
         String endpoint = EndpointContext.getRequest().getRequestURI();
@@ -64,9 +70,27 @@ public class ChatController {
         if(!EndpointContext.getProcessData().isPrivate()) {
             limiterManager.incrementConcurrentCount(EndpointContext.getProcessData().getAkCode(), model);
         }
-        Object requestRiskData = safetyCheckService.safetyCheck(SafetyCheckRequest.Chat.convertFrom(request,
-                    EndpointContext.getProcessData(), EndpointContext.getApikey()), isMock);
+        Object requestRiskData = StageMetrics.time("safety", () -> safetyCheckService.safetyCheck(SafetyCheckRequest.Chat.convertFrom(request,
+                    EndpointContext.getProcessData(), EndpointContext.getApikey()), isMock));
         EndpointContext.getProcessData().setRequestRiskData(requestRiskData);
+        if(request.isStream()) {
+            SseEmitter sse = SseHelper.createSse(1000L * 60 * 5, EndpointContext.getProcessData().getRequestId());
+            //流式请求只有在连接建立前失败时抛出异常，此时尚未向客户端发送数据，可以转移渠道
+            failover.execute(endpoint, model, channel, ch -> doCompletion(endpoint, request, ch, sse, isMock));
+            return sse;
+        }
+
+        CompletionResponse response = failover.execute(endpoint, model, channel,
+                ch -> hedger.execute(endpoint, model, ch, request, (c, req) -> doCompletion(endpoint, req, c, null, isMock)));
+        Object responseRiskData = StageMetrics.time("safety", () -> safetyCheckService.safetyCheck(SafetyCheckRequest.Chat.convertFrom(response,
+                EndpointContext.getProcessData(), EndpointContext.getApikey()), isMock));
+        response.setSensitives(responseRiskData);
+        response.setRequestRiskData(requestRiskData);
+        return response;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private CompletionResponse doCompletion(String endpoint, CompletionRequest request, ChannelDB channel, SseEmitter sse, boolean isMock) {
         EndpointProcessData processData = EndpointContext.getProcessData();
         String protocol = processData.getProtocol();
         String url = processData.getForwardUrl();
@@ -79,17 +103,11 @@ public class ChatController {
         adaptor = decorateAdaptor(adaptor, property, processData);
 
         EndpointContext.setEncodingType(property.getEncodingType());
-        if(request.isStream()) {
-            SseEmitter sse = SseHelper.createSse(1000L * 60 * 5, EndpointContext.getProcessData().getRequestId());
+        if(sse != null) {
             adaptor.streamCompletion(request, url, property, StreamCallbackProvider.provide(sse, processData, EndpointContext.getApikey(), logger, safetyCheckService, property));
-            return sse;
+            return null;
         }
-
-        CompletionResponse response = adaptor.completion(request, url, property);
-        Object responseRiskData = safetyCheckService.safetyCheck(SafetyCheckRequest.Chat.convertFrom(response, EndpointContext.getProcessData(), EndpointContext.getApikey()), isMock);
-        response.setSensitives(responseRiskData);
-        response.setRequestRiskData(requestRiskData);
-        return response;
+        return adaptor.completion(request, url, property);
     }
 
     private void fillMockProperty(CompletionProperty property) {
@@ -4,6 +4,8 @@ import com.ke.bella.openapi.EndpointContext;
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.annotations.EndpointAPI;
 import com.ke.bella.openapi.protocol.AdaptorManager;
+import com.ke.bella.openapi.protocol.ChannelFailover;
+import com.ke.bella.openapi.protocol.ChannelHedger;
 import com.ke.bella.openapi.protocol.ChannelRouter;
 import com.ke.bella.openapi.protocol.embedding.EmbeddingAdaptor;
 import com.ke.bella.openapi.protocol.embedding.EmbeddingProperty;
@@ -29,8 +31,11 @@ public class EmbeddingController {
     private AdaptorManager adaptorManager;
     @Autowired
     private LimiterManager limiterManager;
+    @Autowired
+    private ChannelFailover failover;
+    @Autowired
+    private ChannelHedger hedger;
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     @PostMapping
     public Object embedding(@RequestBody EmbeddingRequest request) {
         String endpoint = EndpointContext.getRequest().getRequestURI();
@@ -42,6 +47,13 @@ public class EmbeddingController {
         if(!EndpointContext.getProcessData().isPrivate()) {
             limiterManager.incrementConcurrentCount(EndpointContext.getProcessData().getAkCode(), model);
         }
+        return failover.execute(endpoint, model, channel,
+                ch -> hedger.execute(endpoint, model, ch, request, (c, req) -> doEmbedding(endpoint, req, c)));
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Object doEmbedding(String endpoint, EmbeddingRequest request, ChannelDB channel) {
+        EndpointProcessData processData = EndpointContext.getProcessData();
         String protocol = processData.getProtocol();
         String url = processData.getForwardUrl();
         String channelInfo = channel.getChannelInfo();
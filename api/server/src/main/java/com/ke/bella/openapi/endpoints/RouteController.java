@@ -36,7 +36,7 @@ public class RouteController {
         if(apikeyInfo == null) {
             throw new BizParamCheckException("用户的Apikey不存在");
         }
-        ChannelDB channelDB = channelRouter.route(request.getEndpoint(), request.getModel(), apikeyInfo, false);
+        ChannelDB channelDB = channelRouter.lookup(request.getEndpoint(), request.getModel(), apikeyInfo);
         return RouteResult.builder()
                 .channelCode(channelDB.getChannelCode())
                 .entityType(channelDB.getEntityType())
@@ -8,6 +8,7 @@ import com.ke.bella.openapi.apikey.ApikeyInfo;
 import com.ke.bella.openapi.common.exception.ChannelException;
 import com.ke.bella.openapi.service.ApikeyService;
 import com.ke.bella.openapi.utils.MatchUtils;
+import com.ke.bella.openapi.utils.StageMetrics;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -35,7 +36,7 @@ public class AuthorizationInterceptor extends HandlerInterceptorAdapter {
         Operator op = BellaContext.getOperatorIgnoreNull();
         if(op != null) {
             String apikey = op.getManagerAk();
-            ApikeyInfo apikeyInfo = apikeyService.verifyAuth(apikey);
+            ApikeyInfo apikeyInfo = StageMetrics.time("auth", () -> apikeyService.verifyAuth(apikey));
             if(apikeyInfo == null) {
                 throw new ChannelException.AuthorizationException("apikey不存在");
             }
@@ -48,7 +49,7 @@ public class AuthorizationInterceptor extends HandlerInterceptorAdapter {
             if(StringUtils.isEmpty(auth)) {
                 throw new ChannelException.AuthorizationException("Authorization is empty");
             }
-            ApikeyInfo apikeyInfo = apikeyService.verifyAuth(auth);
+            ApikeyInfo apikeyInfo = StageMetrics.time("auth", () -> apikeyService.verifyAuth(auth));
             EndpointContext.setApikey(apikeyInfo);
             hasPermission = apikeyInfo.hasPermission(url);
         }
@@ -3,8 +3,10 @@ package com.ke.bella.openapi.intercept;
 import com.ke.bella.openapi.EndpointContext;
 import com.ke.bella.openapi.apikey.ApikeyInfo;
 import com.ke.bella.openapi.common.exception.ChannelException;
+import com.ke.bella.openapi.protocol.limiter.SpendTracker;
 import com.ke.bella.openapi.service.ApikeyService;
 import com.ke.bella.openapi.utils.DateTimeUtils;
+import com.ke.bella.openapi.utils.StageMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
@@ -19,15 +21,22 @@ import static com.ke.bella.openapi.intercept.ConcurrentStartInterceptor.ASYNC_RE
 public class MonthQuotaInterceptor extends HandlerInterceptorAdapter {
     @Autowired
     private ApikeyService apikeyService;
+    @Autowired
+    private SpendTracker spendTracker;
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
         if (Boolean.TRUE.equals(request.getAttribute(ASYNC_REQUEST_MARKER))) {
             return true;
         }
+        StageMetrics.run("month_quota", this::checkQuota);
+        return true;
+    }
+
+    private void checkQuota() {
         ApikeyInfo apikey = EndpointContext.getApikey();
         // 非子ak 或 已指定额度的子ak
         if(apikey.getParentInfo() == null || apikey.getMonthQuota().doubleValue() > 0) {
-            BigDecimal cost = apikeyService.loadCost(apikey.getCode(), DateTimeUtils.getCurrentMonth());
+            BigDecimal cost = loadCost(apikey.getCode());
             double costVal = cost.doubleValue() / 100.0;
             if(apikey.getMonthQuota().doubleValue() <= costVal) {
                 String msg = "已达每月额度上限, limit:" + apikey.getMonthQuota() + ", cost:" + costVal;
@@ -37,13 +46,19 @@ public class MonthQuotaInterceptor extends HandlerInterceptorAdapter {
         // 父ak的总额度不能超出
         if(apikey.getParentInfo() != null) {
             BigDecimal quota = apikey.getParentInfo().getMonthQuota();
-            BigDecimal cost = apikeyService.loadCost(apikey.getParentCode(), DateTimeUtils.getCurrentMonth());
+            BigDecimal cost = loadCost(apikey.getParentCode());
             double costVal = cost.doubleValue() / 100.0;
             if(quota.doubleValue() <= costVal) {
                 String msg = "主ak的总额度已达上限, limit:" + quota + ", cost:" + costVal;
                 throw new ChannelException.RateLimitException(msg);
             }
         }
-        return true;
+    }
+
+    /**
+     * 已刷写的费用加上集群内尚未刷写的费用
+     */
+    private BigDecimal loadCost(String akCode) {
+        return apikeyService.loadCost(akCode, DateTimeUtils.getCurrentMonth()).add(spendTracker.pending(akCode));
     }
 }
@@ -2,11 +2,18 @@ package com.ke.bella.openapi.intercept;
 
 import com.ke.bella.openapi.EndpointContext;
 import com.ke.bella.openapi.BellaContext;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.protocol.limiter.QuotaLimiter;
+import com.ke.bella.openapi.protocol.metrics.ChannelScoreboard;
 import com.ke.bella.openapi.request.BellaRequestFilter;
 import com.ke.bella.openapi.utils.DateTimeUtils;
+import com.ke.bella.openapi.utils.StageMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.ContentCachingRequestWrapper;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -18,6 +25,11 @@ import java.io.IOException;
  */
 @Component
 public class OpenapiRequestFilter extends BellaRequestFilter {
+    @Autowired
+    private ChannelScoreboard channelScoreboard;
+    @Autowired
+    private QuotaLimiter quotaLimiter;
+
     public OpenapiRequestFilter() {
         super("openapi");
     }
@@ -25,6 +37,9 @@ public class OpenapiRequestFilter extends BellaRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
             throws ServletException, IOException {
+        //filter阶段只统计本过滤器建立请求上下文的耗时，不包含后续的处理链（整体耗时见http.server.requests）
+        long start = System.nanoTime();
+        boolean prepared = false;
         try {
             super.bellaRequestFilter(request, response);
             EndpointContext.setHeaderInfo(BellaContext.getHeaders());
@@ -32,10 +47,54 @@ public class OpenapiRequestFilter extends BellaRequestFilter {
             EndpointContext.getProcessData().setRequestTime(DateTimeUtils.getCurrentSeconds());
             ContentCachingRequestWrapper wrappedRequest = new ContentCachingRequestWrapper(request);
             EndpointContext.setRequest(wrappedRequest);
+            prepared = true;
+            StageMetrics.record("filter", System.nanoTime() - start, true);
             chain.doFilter(wrappedRequest, response);
         } finally {
+            if(!prepared) {
+                StageMetrics.record("filter", System.nanoTime() - start, false);
+            }
+            releaseInflight(request, EndpointContext.peekProcessData());
             BellaContext.clearAll();
             EndpointContext.clearAll();
         }
     }
+
+    /**
+     * 兜底释放渠道的在途计数和并发配额（如没有记录日志或抛出异常的请求），异步请求在异步处理结束时释放
+     */
+    private void releaseInflight(HttpServletRequest request, EndpointProcessData processData) {
+        if(processData == null || (processData.getInflightChannel() == null && processData.getQuotaSlot() == null)) {
+            return;
+        }
+        if(!request.isAsyncStarted()) {
+            release(processData);
+            return;
+        }
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                release(processData);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                release(processData);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                release(processData);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    private void release(EndpointProcessData processData) {
+        channelScoreboard.release(processData);
+        quotaLimiter.release(processData);
+    }
 }
@@ -0,0 +1,258 @@
+package com.ke.bella.openapi.protocol;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.protocol.metrics.ChannelScoreboard;
+import com.ke.bella.openapi.tables.pojos.ChannelDB;
+import com.ke.bella.openapi.utils.HttpUtils;
+import com.ke.bella.openapi.utils.JacksonUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 渠道隔离舱：在channelInfo中配置bulkhead后，渠道使用HttpUtils中独立的profile（独立的连接池、Dispatcher和超时时间），
+ * 一个供应商变慢时不会耗尽其他渠道共享的连接和并发。
+ * 路由时原子地占用渠道的在途计数（达到maxInflight时占用失败），计数持有到请求结束，同步和异步请求都受限；
+ * 在途请求数达到上限的渠道在路由时排除，所有候选渠道都饱和时按排队策略拒绝或等待。
+ * wait策略会阻塞请求线程至多queueTimeoutMillis，同时等待的请求数受max-waiters限制，超过时直接拒绝。配置示例：
+ * {"bulkhead": {"maxInflight": 100, "maxIdleConnections": 20, "connectTimeout": 5, "readTimeout": 120, "queue": "wait", "queueTimeoutMillis": 2000}}
+ */
+@Component
+@Slf4j
+public class ChannelBulkheads {
+    public static final String QUEUE_REJECT = "reject";
+    public static final String QUEUE_WAIT = "wait";
+    private static final String PROFILE_PREFIX = "channel:";
+    @Autowired
+    private ChannelScoreboard channelScoreboard;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${bella.openapi.bulkhead.queue-timeout-millis:1000}")
+    private long defaultQueueTimeoutMillis;
+    @Value("${bella.openapi.bulkhead.max-waiters:100}")
+    private int maxWaiters;
+    private final AtomicInteger waiters = new AtomicInteger();
+    //渠道 -> 隔离舱，渠道没有配置bulkhead时也记录，避免channelInfo未变化时重复解析
+    private final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> saturatedCounters = new ConcurrentHashMap<>();
+    //排队结果的耗时统计，启动时注册，避免每次排队都查找meter
+    private Timer queueRejected;
+    private Timer queueAcquired;
+    private Timer queueTimeout;
+
+    @PostConstruct
+    public void init() {
+        queueRejected = queueTimer("rejected");
+        queueAcquired = queueTimer("acquired");
+        queueTimeout = queueTimer("timeout");
+    }
+
+    public static String profile(String channelCode) {
+        return PROFILE_PREFIX + channelCode;
+    }
+
+    /**
+     * 路由表重建时调用，channelInfo变化的渠道重新注册profile
+     */
+    public void update(List<ChannelDB> channels) {
+        for (ChannelDB channel : channels) {
+            String channelInfo = StringUtils.defaultString(channel.getChannelInfo());
+            Bulkhead current = bulkheads.get(channel.getChannelCode());
+            if(current != null && current.channelInfo.equals(channelInfo)) {
+                continue;
+            }
+            Config config = parse(channel.getChannelCode(), channelInfo);
+            if(config == null) {
+                if(current != null && current.config != null) {
+                    HttpUtils.unregisterProfile(profile(channel.getChannelCode()));
+                }
+            } else if(current == null || !Objects.equals(current.config, config)) {
+                register(channel.getChannelCode(), config);
+            }
+            bulkheads.put(channel.getChannelCode(), new Bulkhead(channelInfo, config));
+        }
+    }
+
+    private Config parse(String channelCode, String channelInfo) {
+        if(StringUtils.isBlank(channelInfo)) {
+            return null;
+        }
+        try {
+            JsonNode node = JacksonUtils.MAPPER.readTree(channelInfo).get("bulkhead");
+            if(node == null || !node.isObject()) {
+                return null;
+            }
+            return JacksonUtils.MAPPER.treeToValue(node, Config.class);
+        } catch (Exception e) {
+            LOGGER.warn("invalid bulkhead config, channel: {}, {}", channelCode, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 连接池和Dispatcher在定制外创建，同一渠道不同超时时间的client共享
+     */
+    private void register(String channelCode, Config config) {
+        ConnectionPool pool = config.getMaxIdleConnections() == null ? null
+                : new ConnectionPool(config.getMaxIdleConnections(), 5, TimeUnit.MINUTES);
+        Dispatcher dispatcher = config.getMaxInflight() == null ? null
+                : HttpUtils.dispatcher(config.getMaxInflight(), config.getMaxInflight());
+        HttpUtils.registerProfile(profile(channelCode), builder -> {
+            if(pool != null) {
+                builder.connectionPool(pool);
+            }
+            if(dispatcher != null) {
+                builder.dispatcher(dispatcher);
+            }
+            if(config.getConnectTimeout() != null) {
+                builder.connectTimeout(config.getConnectTimeout(), TimeUnit.SECONDS);
+            }
+            if(config.getReadTimeout() != null) {
+                builder.readTimeout(config.getReadTimeout(), TimeUnit.SECONDS);
+            }
+            return builder;
+        });
+        LOGGER.info("register channel bulkhead, channel: {}, config: {}", channelCode, config);
+    }
+
+    /**
+     * 在途请求数达到上限的渠道（快照，实际占用以tryAcquire为准）
+     */
+    public Set<String> saturated(Collection<String> channelCodes) {
+        if(bulkheads.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> result = null;
+        for (String channelCode : channelCodes) {
+            if(isSaturated(channelCode)) {
+                if(result == null) {
+                    result = new HashSet<>();
+                }
+                result.add(channelCode);
+                saturatedCounters.computeIfAbsent(channelCode, k -> Counter.builder("bella.bulkhead.saturated")
+                        .tag("channel", k)
+                        .register(meterRegistry)).increment();
+            }
+        }
+        return result == null ? Collections.emptySet() : result;
+    }
+
+    /**
+     * 占用渠道的在途计数并绑定到请求上，渠道饱和时返回false
+     */
+    public boolean tryAcquire(EndpointProcessData processData, String channelCode) {
+        return channelScoreboard.tryAcquire(processData, channelCode, limit(channelCode));
+    }
+
+    /**
+     * 占用不绑定到请求上的在途计数（如对冲请求），需调用方释放
+     */
+    public boolean tryAcquire(String channelCode) {
+        return channelScoreboard.tryAcquire(channelCode, limit(channelCode));
+    }
+
+    private boolean isSaturated(String channelCode) {
+        return channelScoreboard.inflight(channelCode) >= limit(channelCode);
+    }
+
+    private int limit(String channelCode) {
+        Bulkhead bulkhead = bulkheads.get(channelCode);
+        if(bulkhead == null || bulkhead.config == null || bulkhead.config.getMaxInflight() == null) {
+            return Integer.MAX_VALUE;
+        }
+        return bulkhead.config.getMaxInflight();
+    }
+
+    /**
+     * 候选渠道都饱和时，等待排队策略为wait的渠道释放容量，最多等待其中最长的排队时间
+     *
+     * @return 有渠道释放容量时返回true，没有可等待的渠道、等待的请求过多或等待超时返回false
+     */
+    public boolean awaitCapacity(Set<String> saturated) {
+        long timeoutMillis = 0;
+        for (String channelCode : saturated) {
+            Bulkhead bulkhead = bulkheads.get(channelCode);
+            if(bulkhead != null && bulkhead.config != null && QUEUE_WAIT.equals(bulkhead.config.getQueue())) {
+                Long queueTimeout = bulkhead.config.getQueueTimeoutMillis();
+                timeoutMillis = Math.max(timeoutMillis, queueTimeout == null ? defaultQueueTimeoutMillis : queueTimeout);
+            }
+        }
+        if(timeoutMillis <= 0) {
+            return false;
+        }
+        if(waiters.incrementAndGet() > maxWaiters) {
+            waiters.decrementAndGet();
+            queueRejected.record(0, TimeUnit.NANOSECONDS);
+            return false;
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = channelScoreboard.awaitRelease(() -> saturated.stream().anyMatch(code -> !isSaturated(code)), timeoutMillis);
+        } finally {
+            waiters.decrementAndGet();
+        }
+        (acquired ? queueAcquired : queueTimeout).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return acquired;
+    }
+
+    private Timer queueTimer(String outcome) {
+        return Timer.builder("bella.bulkhead.queue")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @AllArgsConstructor
+    private static class Bulkhead {
+        private final String channelInfo;
+        private final Config config;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Config {
+        /**
+         * 最大在途请求数
+         */
+        private Integer maxInflight;
+        /**
+         * 独立连接池的最大空闲连接数，不配置时使用共享连接池
+         */
+        private Integer maxIdleConnections;
+        /**
+         * 连接超时时间（秒），优先于适配器指定的超时时间
+         */
+        private Integer connectTimeout;
+        /**
+         * 读超时时间（秒），优先于适配器指定的超时时间
+         */
+        private Integer readTimeout;
+        /**
+         * 排队策略：reject（直接拒绝）、wait（等待容量释放）
+         */
+        private String queue = QUEUE_REJECT;
+        private Long queueTimeoutMillis;
+    }
+}
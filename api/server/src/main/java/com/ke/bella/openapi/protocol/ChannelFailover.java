@@ -0,0 +1,151 @@
+package com.ke.bella.openapi.protocol;
+
+import com.ke.bella.openapi.EndpointContext;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.TaskExecutor;
+import com.ke.bella.openapi.common.exception.ChannelException;
+import com.ke.bella.openapi.protocol.limiter.LimiterManager;
+import com.ke.bella.openapi.protocol.limiter.TpmLimiter;
+import com.ke.bella.openapi.protocol.metrics.MetricsManager;
+import com.ke.bella.openapi.tables.pojos.ChannelDB;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 首包前失败转移：渠道在返回任何数据前失败（5xx、429、连接异常）时，排除已失败的渠道重新路由并重试，
+ * 受最大重试次数和请求头X-BELLA-MAX-WAIT限制
+ */
+@Component
+@Slf4j
+public class ChannelFailover {
+    @Autowired
+    private ChannelRouter router;
+    @Autowired
+    private MetricsManager metricsManager;
+    @Autowired
+    private LimiterManager limiterManager;
+    @Autowired
+    private TpmLimiter tpmLimiter;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${bella.openapi.route.failover.max-retries:1}")
+    private int maxRetries;
+
+    /**
+     * 在渠道上执行请求，失败且可重试时转移到其他渠道
+     *
+     * @param channel 已路由并写入上下文的渠道
+     * @param call    在指定渠道上执行请求；流式请求只能在首包前抛出异常（连接建立完成前）
+     */
+    public <T> T execute(String endpoint, String model, ChannelDB channel, Function<ChannelDB, T> call) {
+        EndpointProcessData processData = EndpointContext.getProcessData();
+        if(maxRetries <= 0 || processData.isMock()) {
+            return call.apply(channel);
+        }
+        Set<String> excluded = new HashSet<>();
+        for (int retries = 0; ; retries++) {
+            long startTime = DateTimeUtils.getCurrentMills();
+            T result = null;
+            RuntimeException failure = null;
+            OpenapiResponse.OpenapiError error;
+            try {
+                result = call.apply(channel);
+                error = result instanceof OpenapiResponse ? ((OpenapiResponse) result).getError() : null;
+            } catch (RuntimeException e) {
+                failure = e;
+                error = ChannelException.fromException(e).convertToOpenapiError();
+            }
+            if(error == null || !retryable(error.getHttpCode()) || retries >= maxRetries || !hasTime(processData)) {
+                return complete(result, failure);
+            }
+            excluded.add(channel.getChannelCode());
+            ChannelDB next;
+            try {
+                next = router.reroute(endpoint, model, EndpointContext.getApikey(), excluded);
+            } catch (ChannelException e) {
+                //没有其他可用渠道，返回本次的失败结果
+                return complete(result, failure);
+            }
+            recordAttempt(processData, channel, error, startTime);
+            switchChannel(processData, model, next);
+            channel = next;
+        }
+    }
+
+    private static <T> T complete(T result, RuntimeException failure) {
+        if(failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    private static boolean retryable(Integer httpCode) {
+        return httpCode == null || httpCode >= 500 || httpCode == 429;
+    }
+
+    private static boolean hasTime(EndpointProcessData processData) {
+        Integer maxWaitSec = processData.getMaxWaitSec();
+        return maxWaitSec == null || DateTimeUtils.getCurrentMills() - processData.getRequestMillis() < maxWaitSec * 1000L;
+    }
+
+    /**
+     * 记录失败的渠道请求，并计入该渠道的指标（在途请求计数在重新路由时已释放）
+     */
+    private void recordAttempt(EndpointProcessData processData, ChannelDB channel, OpenapiResponse.OpenapiError error, long startTime) {
+        if(processData.getFailoverAttempts() == null) {
+            processData.setFailoverAttempts(new ArrayList<>());
+        }
+        processData.getFailoverAttempts().add(new EndpointProcessData.ChannelAttempt(channel.getChannelCode(), error.getHttpCode(),
+                error.getMessage(), DateTimeUtils.getCurrentMills() - startTime));
+        Counter.builder("bella.route.failover")
+                .tag("endpoint", processData.getEndpoint())
+                .tag("code", String.valueOf(error.getHttpCode()))
+                .register(meterRegistry)
+                .increment();
+        EndpointProcessData attempt = EndpointProcessData.builder()
+                .requestId(processData.getRequestId())
+                .endpoint(processData.getEndpoint())
+                .model(processData.getModel())
+                .channelCode(channel.getChannelCode())
+                .supplier(channel.getSupplier())
+                .response(OpenapiResponse.errorResponse(error))
+                .metrics(new HashMap<>())
+                .innerLog(true)
+                .build();
+        TaskExecutor.submit(() -> {
+            try {
+                metricsManager.record(attempt);
+            } catch (Exception e) {
+                LOGGER.warn("record failover metrics failed, " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 切换渠道，预占的tpm额度转到新渠道；私有渠道不计入并发限制，可见性变化时同步调整并发计数
+     */
+    void switchChannel(EndpointProcessData processData, String model, ChannelDB channel) {
+        boolean wasPrivate = processData.isPrivate();
+        tpmLimiter.transfer(processData, channel.getChannelCode());
+        EndpointContext.setEndpointData(channel);
+        if(wasPrivate == processData.isPrivate()) {
+            return;
+        }
+        if(processData.isPrivate()) {
+            limiterManager.decrementConcurrentCount(processData.getAkCode(), model);
+        } else {
+            limiterManager.incrementConcurrentCount(processData.getAkCode(), model);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.ke.bella.openapi.protocol;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ke.bella.openapi.BellaContext;
+import com.ke.bella.openapi.EndpointContext;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.TaskExecutor;
+import com.ke.bella.openapi.common.exception.ChannelException;
+import com.ke.bella.openapi.protocol.limiter.TpmLimiter;
+import com.ke.bella.openapi.protocol.metrics.ChannelScoreboard;
+import com.ke.bella.openapi.tables.pojos.ChannelDB;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import com.ke.bella.openapi.utils.HttpUtils;
+import com.ke.bella.openapi.utils.JacksonUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * 对冲请求：非流式请求在主渠道超过其近期延迟的指定分位数仍未返回时，向另一个渠道发起相同的请求，
+ * 先成功返回的结果胜出，落败的请求通过OkHttp Call取消，只有胜出的渠道写入上下文并计费。
+ * 需开启bella.openapi.route.hedge.enabled，且请求头X-BELLA-HEDGE为true，每个apikey每分钟的对冲比例受限。
+ * 对冲请求在独立的线程池中执行（max-concurrency，已满时不发起对冲），在对冲渠道上预占tpm额度，落败方的预占额度归还；
+ * 对冲请求与原请求属于同一次调用，不再占用apikey的rpm和并发配额
+ */
+@Component
+@Slf4j
+public class ChannelHedger {
+    public static final String HEDGE_HEADER = "X-BELLA-HEDGE";
+    private static final int PRIMARY = 1;
+    private static final int HEDGE = 2;
+    private static final int WINDOW_SIZE = 128;
+    @Autowired
+    private ChannelRouter router;
+    @Autowired
+    private ChannelFailover failover;
+    @Autowired
+    private ChannelScoreboard channelScoreboard;
+    @Autowired
+    private ChannelBulkheads channelBulkheads;
+    @Autowired
+    private TpmLimiter tpmLimiter;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${bella.openapi.route.hedge.enabled:false}")
+    private boolean enabled;
+    @Value("${bella.openapi.route.hedge.percentile:95}")
+    private double percentile;
+    @Value("${bella.openapi.route.hedge.min-samples:20}")
+    private int minSamples;
+    @Value("${bella.openapi.route.hedge.min-delay-millis:50}")
+    private long minDelayMillis;
+    @Value("${bella.openapi.route.hedge.max-ratio:0.05}")
+    private double maxRatio;
+    @Value("${bella.openapi.route.hedge.max-concurrency:64}")
+    private int maxConcurrency;
+    //渠道 -> 最近的请求耗时(ms)
+    private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final Cache<String, HedgeBudget> budgets = Caffeine.newBuilder()
+            .maximumSize(100000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+    private Counter launchedCounter;
+    private Counter wonCounter;
+    private Counter rejectedCounter;
+    //对冲请求阻塞等待上游响应，不占用TaskExecutor的共享线程
+    private ThreadPoolExecutor hedgeExecutor;
+
+    @PostConstruct
+    public void init() {
+        launchedCounter = Counter.builder("bella.route.hedge").tag("result", "launched").register(meterRegistry);
+        wonCounter = Counter.builder("bella.route.hedge").tag("result", "won").register(meterRegistry);
+        rejectedCounter = Counter.builder("bella.route.hedge").tag("result", "rejected").register(meterRegistry);
+        hedgeExecutor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new TaskExecutor.NamedThreadFactory("bella-hedge-", true));
+        hedgeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * 在渠道上执行请求，满足条件时发起对冲请求
+     *
+     * @param primary 已路由并写入上下文的渠道
+     * @param request 请求体，对冲请求使用其副本，避免适配器并发修改
+     * @param call    在指定渠道上执行请求，可能在其他线程调用
+     */
+    @SuppressWarnings("unchecked")
+    public <R, T> T execute(String endpoint, String model, ChannelDB primary, R request, BiFunction<ChannelDB, R, T> call) {
+        EndpointProcessData processData = EndpointContext.getProcessData();
+        if(!enabled || processData.isMock()) {
+            return call.apply(primary, request);
+        }
+        long delay = -1;
+        HedgeBudget budget = null;
+        if(processData.getAkCode() != null && "true".equals(BellaContext.getHeader(HEDGE_HEADER))) {
+            budget = budgets.get(processData.getAkCode(), k -> new HedgeBudget());
+            budget.request();
+            delay = hedgeDelay(primary.getChannelCode());
+        }
+        long startTime = DateTimeUtils.getCurrentMills();
+        if(delay < 0) {
+            T result = call.apply(primary, request);
+            recordLatency(primary, result, startTime);
+            return result;
+        }
+        Race<T> race = new Race<>();
+        R hedgeRequest = (R) JacksonUtils.deserialize(JacksonUtils.serialize(request), request.getClass());
+        EndpointProcessData hedgeData = copy(processData);
+        Map<String, Object> context = BellaContext.snapshot();
+        HedgeBudget hedgeBudget = budget;
+        ScheduledFuture<?> trigger = TaskExecutor.schedule(() -> launch(() -> hedge(race, context, hedgeData, hedgeBudget, endpoint, model,
+                primary, hedgeRequest, call)), delay);
+        T result = null;
+        RuntimeException failure = null;
+        HttpUtils.observeCalls(race::setPrimaryCall);
+        try {
+            result = call.apply(primary, request);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            HttpUtils.clearCallObserver();
+        }
+        if(race.decide(PRIMARY)) {
+            trigger.cancel(false);
+            race.cancel(race.hedgeCall);
+            EndpointProcessData.ChannelAttempt hedgeAttempt = race.hedgeAttempt;
+            if(hedgeAttempt == null && race.hedgeChannel != null) {
+                //对冲请求仍在进行中，已被取消
+                hedgeAttempt = new EndpointProcessData.ChannelAttempt(race.hedgeChannel.getChannelCode(), 499,
+                        "cancelled by the winning request", DateTimeUtils.getCurrentMills() - startTime);
+            }
+            if(hedgeAttempt != null) {
+                addAttempt(processData, hedgeAttempt);
+            }
+            if(failure != null) {
+                throw failure;
+            }
+            recordLatency(primary, result, startTime);
+            return result;
+        }
+        //对冲请求胜出，主渠道请求已被取消
+        HedgeOutcome<T> outcome = race.hedgeResult.join();
+        addAttempt(processData, attempt(primary, result, failure, race.primaryCall, startTime));
+        //对冲请求占用的在途计数转给当前请求，同时释放主渠道
+        channelScoreboard.bind(processData, outcome.channel.getChannelCode());
+        //主渠道的tpm预占归还，改用对冲渠道上的预占
+        cancelReservation(processData, primary.getChannelCode());
+        failover.switchChannel(processData, model, outcome.channel);
+        processData.setReservedTokens(outcome.data.getReservedTokens());
+        processData.setEncodingType(outcome.data.getEncodingType());
+        processData.setChannelRequestId(outcome.data.getChannelRequestId());
+        return outcome.result;
+    }
+
+    private <R, T> void hedge(Race<T> race, Map<String, Object> context, EndpointProcessData data, HedgeBudget budget, String endpoint,
+            String model, ChannelDB primary, R request, BiFunction<ChannelDB, R, T> call) {
+        if(race.isDecided()) {
+            return;
+        }
+        if(!budget.tryHedge(maxRatio)) {
+            rejectedCounter.increment();
+            return;
+        }
+        ChannelDB channel = null;
+        boolean won = false;
+        T result = null;
+        Exception failure = null;
+        long startTime = DateTimeUtils.getCurrentMills();
+        try {
+            BellaContext.replace(context);
+            EndpointContext.setProcessData(data);
+            ChannelDB candidate = router.lookup(endpoint, model, BellaContext.getApikey(), Collections.singleton(primary.getChannelCode()));
+            if(!channelBulkheads.tryAcquire(candidate.getChannelCode())) {
+                //对冲渠道的隔离舱已满，不发起对冲
+                rejectedCounter.increment();
+                return;
+            }
+            channel = candidate;
+            if(!reserveTokens(data, channel, request)) {
+                //对冲渠道的tpm额度不足，不发起对冲
+                rejectedCounter.increment();
+                channelScoreboard.release(channel.getChannelCode());
+                return;
+            }
+            race.hedgeChannel = channel;
+            EndpointContext.setEndpointData(channel);
+            launchedCounter.increment();
+            HttpUtils.observeCalls(race::setHedgeCall);
+            startTime = DateTimeUtils.getCurrentMills();
+            result = call.apply(channel, request);
+            if(isSuccess(result) && race.decide(HEDGE)) {
+                won = true;
+                recordLatency(channel, result, startTime);
+                race.hedgeResult.complete(new HedgeOutcome<>(channel, data, result));
+                race.cancel(race.primaryCall);
+                wonCounter.increment();
+            }
+        } catch (Exception e) {
+            failure = e;
+            LOGGER.info("hedge request failed, requestId: {}, {}", data.getRequestId(), e.getMessage());
+        } finally {
+            HttpUtils.clearCallObserver();
+            EndpointContext.clearAll();
+        }
+        if(channel != null && !won) {
+            channelScoreboard.release(channel.getChannelCode());
+            cancelReservation(data, channel.getChannelCode());
+            race.hedgeAttempt = attempt(channel, result, failure, race.hedgeCall, startTime);
+        }
+    }
+
+    private void launch(Runnable hedge) {
+        try {
+            hedgeExecutor.execute(hedge);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+        }
+    }
+
+    /**
+     * 在对冲渠道上预占tpm额度，预占的token数记录在对冲请求的上下文中
+     */
+    private boolean reserveTokens(EndpointProcessData data, ChannelDB channel, Object request) {
+        data.setReservedTokens(null);
+        int tokens = tpmLimiter.estimate(request, channel);
+        if(tokens <= 0) {
+            return true;
+        }
+        if(tpmLimiter.reserve(data.getAkCode(), entityCode(data), channel.getChannelCode(), tokens) != TpmLimiter.OK) {
+            return false;
+        }
+        data.setReservedTokens(tokens);
+        return true;
+    }
+
+    private void cancelReservation(EndpointProcessData data, String channelCode) {
+        Integer reserved = data.getReservedTokens();
+        if(reserved != null) {
+            tpmLimiter.cancel(data.getAkCode(), entityCode(data), channelCode, reserved);
+            data.setReservedTokens(null);
+        }
+    }
+
+    private static String entityCode(EndpointProcessData data) {
+        return data.getModel() != null ? data.getModel() : data.getEndpoint();
+    }
+
+    private long hedgeDelay(String channelCode) {
+        LatencyWindow window = latencies.get(channelCode);
+        long latency = window == null ? -1 : window.percentile(percentile, minSamples);
+        return latency < 0 ? -1 : Math.max(latency, minDelayMillis);
+    }
+
+    private void recordLatency(ChannelDB channel, Object result, long startTime) {
+        if(isSuccess(result)) {
+            latencies.computeIfAbsent(channel.getChannelCode(), k -> new LatencyWindow())
+                    .add(DateTimeUtils.getCurrentMills() - startTime);
+        }
+    }
+
+    private static boolean isSuccess(Object result) {
+        return result != null && !(result instanceof OpenapiResponse && ((OpenapiResponse) result).getError() != null);
+    }
+
+    private static void addAttempt(EndpointProcessData processData, EndpointProcessData.ChannelAttempt attempt) {
+        if(processData.getFailoverAttempts() == null) {
+            processData.setFailoverAttempts(new ArrayList<>());
+        }
+        processData.getFailoverAttempts().add(attempt);
+    }
+
+    /**
+     * 落败请求的实际结果：被胜出方取消时记为499，否则按返回结果或异常记录
+     */
+    private static EndpointProcessData.ChannelAttempt attempt(ChannelDB channel, Object result, Exception failure, Call call,
+            long startTime) {
+        long cost = DateTimeUtils.getCurrentMills() - startTime;
+        if(call != null && call.isCanceled()) {
+            return new EndpointProcessData.ChannelAttempt(channel.getChannelCode(), 499, "cancelled by the winning request", cost);
+        }
+        OpenapiResponse.OpenapiError error = null;
+        if(failure != null) {
+            error = ChannelException.fromException(failure).convertToOpenapiError();
+        } else if(result instanceof OpenapiResponse) {
+            error = ((OpenapiResponse) result).getError();
+        }
+        if(error == null) {
+            return new EndpointProcessData.ChannelAttempt(channel.getChannelCode(), 200, "completed after the race was decided", cost);
+        }
+        return new EndpointProcessData.ChannelAttempt(channel.getChannelCode(), error.getHttpCode(), error.getMessage(), cost);
+    }
+
+    private static EndpointProcessData copy(EndpointProcessData processData) {
+        EndpointProcessData data = new EndpointProcessData();
+        BeanUtils.copyProperties(processData, data);
+        data.setMetrics(new HashMap<>());
+        data.setFailoverAttempts(null);
+        data.setInflightChannel(null);
+        return data;
+    }
+
+    private static class Race<T> {
+        private final AtomicInteger winner = new AtomicInteger();
+        private final CompletableFuture<HedgeOutcome<T>> hedgeResult = new CompletableFuture<>();
+        private volatile Call primaryCall;
+        private volatile Call hedgeCall;
+        private volatile ChannelDB hedgeChannel;
+        //对冲请求落败且已结束时的实际结果
+        private volatile EndpointProcessData.ChannelAttempt hedgeAttempt;
+
+        boolean decide(int side) {
+            return winner.compareAndSet(0, side);
+        }
+
+        boolean isDecided() {
+            return winner.get() != 0;
+        }
+
+        void setPrimaryCall(Call call) {
+            primaryCall = call;
+            if(winner.get() == HEDGE) {
+                call.cancel();
+            }
+        }
+
+        void setHedgeCall(Call call) {
+            hedgeCall = call;
+            if(winner.get() == PRIMARY) {
+                call.cancel();
+            }
+        }
+
+        void cancel(Call call) {
+            if(call != null) {
+                call.cancel();
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static class HedgeOutcome<T> {
+        private final ChannelDB channel;
+        private final EndpointProcessData data;
+        private final T result;
+    }
+
+    /**
+     * 渠道最近的请求耗时，环形缓冲
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int count;
+        private int index;
+
+        synchronized void add(long latency) {
+            samples[index] = latency;
+            index = (index + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized long percentile(double percentile, int minSamples) {
+            if(count < minSamples || count == 0) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int i = (int) Math.ceil(percentile / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(i, count - 1))];
+        }
+    }
+
+    /**
+     * apikey在当前分钟内的请求数和对冲数
+     */
+    private static class HedgeBudget {
+        private long minute;
+        private long requests;
+        private long hedges;
+
+        synchronized void request() {
+            roll();
+            requests++;
+        }
+
+        synchronized boolean tryHedge(double maxRatio) {
+            roll();
+            if(hedges + 1 > requests * maxRatio) {
+                return false;
+            }
+            hedges++;
+            return true;
+        }
+
+        private void roll() {
+            long current = DateTimeUtils.getCurrentSeconds() / 60;
+            if(current != minute) {
+                minute = current;
+                requests = 0;
+                hedges = 0;
+            }
+        }
+    }
+}
@@ -1,16 +1,24 @@
 package com.ke.bella.openapi.protocol;
 
+import com.google.common.hash.Hashing;
+import com.ke.bella.openapi.BellaContext;
 import com.ke.bella.openapi.EndpointContext;
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.apikey.ApikeyInfo;
 import com.ke.bella.openapi.common.EntityConstants;
 import com.ke.bella.openapi.common.exception.BizParamCheckException;
 import com.ke.bella.openapi.common.exception.ChannelException;
+import com.ke.bella.openapi.protocol.completion.CompletionRequest;
+import com.ke.bella.openapi.protocol.completion.Message;
 import com.ke.bella.openapi.protocol.limiter.LimiterManager;
+import com.ke.bella.openapi.protocol.limiter.QuotaLimiter;
+import com.ke.bella.openapi.protocol.limiter.TpmLimiter;
+import com.ke.bella.openapi.protocol.metrics.ChannelScoreboard;
 import com.ke.bella.openapi.protocol.metrics.MetricsManager;
 import com.ke.bella.openapi.service.ChannelService;
 import com.ke.bella.openapi.service.ModelService;
 import com.ke.bella.openapi.tables.pojos.ChannelDB;
+import com.ke.bella.openapi.utils.StageMetrics;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,16 +26,20 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.ke.bella.openapi.common.EntityConstants.LOWEST_SAFETY_LEVEL;
 
 @Component
 public class ChannelRouter {
+    public static final String SESSION_HEADER = "X-BELLA-SESSION-ID";
     private final Random random = new Random();
     @Autowired
     private ChannelService channelService;
@@ -37,25 +49,140 @@ public class ChannelRouter {
     private MetricsManager metricsManager;
     @Autowired
     private LimiterManager limiterManager;
+    @Autowired
+    private ChannelScoreboard channelScoreboard;
+    @Autowired
+    private ChannelBulkheads channelBulkheads;
+    @Autowired
+    private QuotaLimiter quotaLimiter;
+    @Autowired
+    private TpmLimiter tpmLimiter;
     @Value("${bella.openapi.free.rpm:5}")
     private Integer freeRpm;
     @Value("${bella.openapi.free.concurrent:1}")
     private Integer freeConcurrent;
+    /**
+     * 同优先级渠道的选择策略：random（随机）、weighted（按延迟和错误率加权）、p2c（随机两个中选在途请求少的）
+     */
+    @Value("${bella.openapi.route.strategy:random}")
+    private String routeStrategy;
+    /**
+     * 亲和路由：相同会话或相同消息前缀的请求优先路由到同一渠道，以命中供应商的prompt缓存
+     */
+    @Value("${bella.openapi.route.affinity.enabled:false}")
+    private boolean affinityEnabled;
+    @Value("${bella.openapi.route.affinity.prefix-chars:4096}")
+    private int affinityPrefixChars;
+    /**
+     * 亲和渠道的在途请求数超过候选渠道平均值的倍数时视为过载，改用常规选择策略
+     */
+    @Value("${bella.openapi.route.affinity.overload-ratio:2.0}")
+    private double affinityOverloadRatio;
+    private final ConcurrentHashMap<String, RoutingTable> routingTables = new ConcurrentHashMap<>();
 
     public ChannelDB route(String endpoint, String model, ApikeyInfo apikeyInfo, boolean isMock) {
+        return StageMetrics.time("route", () -> routeAndReserve(endpoint, model, apikeyInfo, isMock));
+    }
+
+    private ChannelDB routeAndReserve(String endpoint, String model, ApikeyInfo apikeyInfo, boolean isMock) {
+        if(isMock) {
+            return doRoute(endpoint, model, apikeyInfo, true, Collections.emptySet());
+        }
+        String entityCode = model != null ? model : endpoint;
+        ChannelDB channel = acquireRoute(endpoint, model, apikeyInfo, tpmLimiter.exhaustedChannels());
+        channel = reserveTokens(endpoint, model, entityCode, apikeyInfo, channel);
+        try {
+            quotaLimiter.acquire(EndpointContext.getProcessData(), apikeyInfo.getCode(), entityCode);
+        } catch (ChannelException e) {
+            Integer reserved = EndpointContext.getProcessData().getReservedTokens();
+            if(reserved != null) {
+                tpmLimiter.cancel(apikeyInfo.getCode(), entityCode, channel.getChannelCode(), reserved);
+                EndpointContext.getProcessData().setReservedTokens(null);
+            }
+            channelScoreboard.release(EndpointContext.getProcessData());
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * 路由并原子地占用渠道的在途计数（隔离舱限制），并发请求抢先占满时排除该渠道重新路由
+     */
+    private ChannelDB acquireRoute(String endpoint, String model, ApikeyInfo apikeyInfo, Set<String> excluded) {
+        Set<String> lost = null;
+        while (true) {
+            ChannelDB channel = doRoute(endpoint, model, apikeyInfo, false, lost == null ? excluded : lost);
+            if(channelBulkheads.tryAcquire(EndpointContext.getProcessData(), channel.getChannelCode())) {
+                return channel;
+            }
+            if(lost == null) {
+                lost = new HashSet<>(excluded);
+            }
+            lost.add(channel.getChannelCode());
+        }
+    }
+
+    /**
+     * 预占tpm额度，渠道额度不足时排除该渠道重新路由
+     */
+    private ChannelDB reserveTokens(String endpoint, String model, String entityCode, ApikeyInfo apikeyInfo, ChannelDB channel) {
+        if(!tpmLimiter.isEnabled()) {
+            return channel;
+        }
+        EndpointProcessData processData = EndpointContext.getProcessData();
+        Set<String> excluded = null;
+        while (true) {
+            int tokens = tpmLimiter.estimate(processData.getRequest(), channel);
+            int result = tpmLimiter.reserve(apikeyInfo.getCode(), entityCode, channel.getChannelCode(), tokens);
+            if(result == TpmLimiter.OK) {
+                processData.setReservedTokens(tokens);
+                return channel;
+            }
+            if(result == TpmLimiter.APIKEY_EXHAUSTED) {
+                channelScoreboard.release(processData);
+                throw new ChannelException.RateLimitException("每分钟最多使用" + tpmLimiter.apikeyLimit(apikeyInfo.getCode(), entityCode) + "个token");
+            }
+            if(excluded == null) {
+                excluded = new HashSet<>(tpmLimiter.exhaustedChannels());
+            }
+            excluded.add(channel.getChannelCode());
+            channel = acquireRoute(endpoint, model, apikeyInfo, excluded);
+        }
+    }
+
+    /**
+     * 只查询路由结果，请求不经过网关转发（如/v1/route），不计入渠道在途请求数
+     */
+    public ChannelDB lookup(String endpoint, String model, ApikeyInfo apikeyInfo) {
+        return doRoute(endpoint, model, apikeyInfo, false, Collections.emptySet());
+    }
+
+    public ChannelDB lookup(String endpoint, String model, ApikeyInfo apikeyInfo, Set<String> excluded) {
+        return doRoute(endpoint, model, apikeyInfo, false, excluded);
+    }
+
+    /**
+     * 首包前失败转移时重新路由：排除已失败的渠道，在同层或更低优先级的可用渠道中选择，并释放已失败渠道的在途计数
+     */
+    public ChannelDB reroute(String endpoint, String model, ApikeyInfo apikeyInfo, Set<String> excluded) {
+        return acquireRoute(endpoint, model, apikeyInfo, excluded);
+    }
+
+    private ChannelDB doRoute(String endpoint, String model, ApikeyInfo apikeyInfo, boolean isMock, Set<String> excluded) {
         if(StringUtils.isBlank(endpoint) && StringUtils.isBlank(model)) {
             throw new BizParamCheckException("没有可用渠道");
         }
         List<ChannelDB> channels;
+        String entityType;
         String entityCode;
         if(model != null) {
-            String terminal = modelService.fetchTerminalModelName(model);
-            entityCode = terminal;
-            channels = channelService.listActives(EntityConstants.MODEL, terminal);
+            entityType = EntityConstants.MODEL;
+            entityCode = modelService.fetchTerminalModelName(model);
         } else {
+            entityType = EntityConstants.ENDPOINT;
             entityCode = endpoint;
-            channels = channelService.listActives(EntityConstants.ENDPOINT, endpoint);
         }
+        channels = channelService.listActives(entityType, entityCode);
         if(CollectionUtils.isEmpty(channels)) {
             if(isMock) {
                 return mockChannel(null);
@@ -63,57 +190,72 @@ public class ChannelRouter {
                 throw new BizParamCheckException("没有可用渠道");
             }
         }
-        if(!isMock) {
-            channels = filter(channels, entityCode, apikeyInfo);
+        RoutingTable table = getRoutingTable(entityType + ":" + entityCode, channels);
+        if(isMock) {
+            return mockChannel(select(table.pickAny()));
         }
-        channels = pickMaxPriority(channels);
-        ChannelDB channel = random(channels);
-        return isMock ? mockChannel(channel) : channel;
+        return select(filter(table, entityCode, apikeyInfo, excluded), affinityKey());
     }
 
     /**
-     * 1、筛选账户支持的数据流向（风控） 2、筛选可用的渠道
+     * 渠道列表缓存更新（新增、修改渠道或变更状态）后返回的是新的列表实例，此时重建路由表并整体替换
+     */
+    private RoutingTable getRoutingTable(String key, List<ChannelDB> channels) {
+        RoutingTable table = routingTables.get(key);
+        if(table == null || table.getSource() != channels) {
+            table = RoutingTable.build(channels);
+            channelBulkheads.update(channels);
+            routingTables.put(key, table);
+        }
+        return table;
+    }
+
+    /**
+     * 1、筛选账户支持的数据流向（风控） 2、筛选可用的渠道（隔离舱饱和的渠道视为不可用） 3、选取优先级最高的渠道
      *
-     * @param channels
+     * @param table
+     * @param excluded 需要排除的渠道
      *
      * @return
      */
-    private List<ChannelDB> filter(List<ChannelDB> channels, String entityCode, ApikeyInfo apikeyInfo) {
-        Byte safetyLevel = apikeyInfo.getSafetyLevel();
-        String accountType = apikeyInfo.getOwnerType();
-        String accountCode = apikeyInfo.getOwnerCode();
-        List<ChannelDB> filtered = channels.stream()
-                .filter(channel -> !EntityConstants.PRIVATE.equals(channel.getVisibility()) ||
-                        (accountType.equals(channel.getOwnerType()) && accountCode.equals(channel.getOwnerCode())))
-                .filter(channel -> getSafetyLevelLimit(channel.getDataDestination()) <= safetyLevel)
-                .collect(Collectors.toList());
-        if(CollectionUtils.isEmpty(filtered)) {
-            if(LOWEST_SAFETY_LEVEL.equals(safetyLevel)) {
-                filtered = channels.stream().filter(this::isTestUsed)
-                        .collect(Collectors.toList());
-            }
-            if(CollectionUtils.isEmpty(filtered)) {
+    private List<ChannelDB> filter(RoutingTable table, String entityCode, ApikeyInfo apikeyInfo, Set<String> excluded) {
+        byte safetyLevel = apikeyInfo.getSafetyLevel();
+        String ownerKey = RoutingTable.ownerKey(apikeyInfo.getOwnerType(), apikeyInfo.getOwnerCode());
+        boolean trial = false;
+        if(!table.hasEligible(safetyLevel, ownerKey)) {
+            if(!LOWEST_SAFETY_LEVEL.equals(safetyLevel) || !table.hasTrial()) {
                 throw new ChannelException.AuthorizationException("未经安全合规审核，没有使用权限");
             }
             if(freeAkOverload(EndpointContext.getProcessData().getAkCode(), entityCode)) {
                 throw new ChannelException.RateLimitException("当前使用试用额度,每分钟最多请求" + freeRpm + "次, 且并行请求数不能高于" + freeConcurrent);
             }
+            trial = true;
+        }
+        Set<String> unavailableSet = metricsManager.getAllUnavailableChannels(table.getChannelCodes());
+        //饱和的渠道作为排除项，受保护和内部部署的渠道同样受隔离舱限制
+        Set<String> saturated = channelBulkheads.saturated(table.getChannelCodes());
+        List<ChannelDB> filtered = pick(table, trial, safetyLevel, ownerKey, unavailableSet, union(excluded, saturated));
+        if(CollectionUtils.isEmpty(filtered) && !saturated.isEmpty() && channelBulkheads.awaitCapacity(saturated)) {
+            filtered = pick(table, trial, safetyLevel, ownerKey, unavailableSet, union(excluded, channelBulkheads.saturated(table.getChannelCodes())));
         }
-        Set<String> unavailableSet = metricsManager.getAllUnavailableChannels(
-                filtered.stream().map(ChannelDB::getChannelCode).collect(Collectors.toList()));
-        filtered = filtered.stream()
-                .filter(channel -> channel.getDataDestination().equals(EntityConstants.PROTECTED) ||
-                        channel.getDataDestination().equals(EntityConstants.INNER) ||
-                        !unavailableSet.contains(channel.getChannelCode()))
-                .collect(Collectors.toList());
         if(CollectionUtils.isEmpty(filtered)) {
             throw new ChannelException.RateLimitException("渠道当前负载过高，请稍后重试");
         }
         return filtered;
     }
 
-    private boolean isTestUsed(ChannelDB channel) {
-        return 1 == channel.getTrialEnabled() && !EntityConstants.PRIVATE.equals(channel.getVisibility());
+    private List<ChannelDB> pick(RoutingTable table, boolean trial, byte safetyLevel, String ownerKey, Set<String> unavailable,
+            Set<String> excluded) {
+        return trial ? table.pickTrial(unavailable, excluded) : table.pick(safetyLevel, ownerKey, unavailable, excluded);
+    }
+
+    private static Set<String> union(Set<String> excluded, Set<String> saturated) {
+        if(saturated.isEmpty()) {
+            return excluded;
+        }
+        Set<String> result = new HashSet<>(excluded);
+        result.addAll(saturated);
+        return result;
     }
 
     private boolean freeAkOverload(String akCode, String entityCode) {
@@ -121,58 +263,180 @@ public class ChannelRouter {
                 || limiterManager.getCurrentConcurrentCount(akCode, entityCode) >= freeConcurrent;
     }
 
-    private Byte getSafetyLevelLimit(String dataDestination) {
-        switch (dataDestination) {
-        case EntityConstants.PROTECTED:
-            return 10;
-        case EntityConstants.INNER:
-            return 20;
-        case EntityConstants.MAINLAND:
-            return 30;
-        case EntityConstants.OVERSEAS:
-            return 40;
+    private ChannelDB select(List<ChannelDB> list, String affinityKey) {
+        if(affinityKey != null && list.size() > 1) {
+            ChannelDB preferred = rendezvous(list, affinityKey);
+            if(!overloaded(preferred, list)) {
+                return preferred;
+            }
         }
-        return 40;
+        return select(list);
     }
 
-    private List<ChannelDB> pickMaxPriority(List<ChannelDB> channels) {
-        List<ChannelDB> highest = new ArrayList<>();
-        String curVisibility = EntityConstants.PUBLIC;
-        String curPriority = EntityConstants.LOW;
-        for (ChannelDB channel : channels) {
-            String priority = channel.getPriority();
-            String visibility = StringUtils.isNotBlank(channel.getVisibility()) ? channel.getVisibility() : EntityConstants.PUBLIC;
-            int compare = compare(priority, curPriority, visibility, curVisibility);
-            if(compare < 0) {
-                continue;
+    /**
+     * 亲和键：优先使用请求头中的会话id，其次使用对话消息的前缀
+     */
+    private String affinityKey() {
+        if(!affinityEnabled) {
+            return null;
+        }
+        String session = BellaContext.getHeader(SESSION_HEADER);
+        if(StringUtils.isNotBlank(session)) {
+            return session;
+        }
+        Object request = EndpointContext.getProcessData().getRequest();
+        if(request instanceof CompletionRequest && CollectionUtils.isNotEmpty(((CompletionRequest) request).getMessages())) {
+            return messagesPrefix(((CompletionRequest) request).getMessages());
+        }
+        return null;
+    }
+
+    /**
+     * 对话消息的前缀，达到prefix-chars后立即停止，不序列化整条消息；非文本内容（如图片）只取其类型
+     */
+    private String messagesPrefix(List<Message> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (Message message : messages) {
+            if(!appendPrefix(sb, message.getRole()) || !appendPrefix(sb, ":")) {
+                break;
             }
-            if(compare > 0) {
-                highest.clear();
-                curPriority = priority;
-                curVisibility = visibility;
+            Object content = message.getContent();
+            if(content instanceof String) {
+                if(!appendPrefix(sb, (String) content)) {
+                    break;
+                }
+            } else if(content instanceof List) {
+                for (Object part : (List<?>) content) {
+                    if(!appendPrefix(sb, contentPart(part))) {
+                        break;
+                    }
+                }
             }
-            highest.add(channel);
+            if(!appendPrefix(sb, "\n")) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String contentPart(Object part) {
+        if(!(part instanceof Map)) {
+            return part instanceof String ? (String) part : "";
+        }
+        Object text = ((Map<?, ?>) part).get("text");
+        if(text instanceof String) {
+            return (String) text;
+        }
+        return "[" + ((Map<?, ?>) part).get("type") + "]";
+    }
+
+    /**
+     * 追加到前缀，返回是否还有剩余长度
+     */
+    private boolean appendPrefix(StringBuilder sb, String value) {
+        if(value == null) {
+            return sb.length() < affinityPrefixChars;
+        }
+        int remaining = affinityPrefixChars - sb.length();
+        if(remaining <= 0) {
+            return false;
         }
-        return highest;
+        sb.append(value, 0, Math.min(remaining, value.length()));
+        return sb.length() < affinityPrefixChars;
     }
 
-    private int compare(String priority, String curPriority, String visibility, String curVisibility) {
-        if(visibility.equals(curVisibility)) {
-            if(priority.equals(curPriority)) {
-                return 0;
+    /**
+     * 最高随机权重哈希（rendezvous hashing）：候选渠道增减时，只有原本映射到该渠道的请求会改变路由
+     */
+    static ChannelDB rendezvous(List<ChannelDB> list, String key) {
+        long keyHash = Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+        ChannelDB preferred = null;
+        long maxScore = Long.MIN_VALUE;
+        for (ChannelDB channel : list) {
+            long score = Hashing.murmur3_128().newHasher()
+                    .putLong(keyHash)
+                    .putString(channel.getChannelCode(), StandardCharsets.UTF_8)
+                    .hash().asLong();
+            if(preferred == null || score > maxScore) {
+                preferred = channel;
+                maxScore = score;
             }
-            if(priority.equals(EntityConstants.LOW)) {
-                return -1;
+        }
+        return preferred;
+    }
+
+    private boolean overloaded(ChannelDB preferred, List<ChannelDB> list) {
+        long total = 0;
+        for (ChannelDB channel : list) {
+            total += channelScoreboard.inflight(channel.getChannelCode());
+        }
+        double average = (double) total / list.size();
+        return channelScoreboard.inflight(preferred.getChannelCode()) > affinityOverloadRatio * average + 1;
+    }
+
+    private ChannelDB select(List<ChannelDB> list) {
+        if(list.size() == 1) {
+            return list.get(0);
+        }
+        switch (routeStrategy) {
+        case "weighted":
+            return weighted(list);
+        case "p2c":
+            return powerOfTwoChoices(list);
+        default:
+            return random(list);
+        }
+    }
+
+    private ChannelDB weighted(List<ChannelDB> list) {
+        double defaultLatency = defaultLatency(list);
+        double[] weights = new double[list.size()];
+        double total = 0;
+        for (int i = 0; i < list.size(); i++) {
+            weights[i] = channelScoreboard.weight(list.get(i).getChannelCode(), defaultLatency);
+            total += weights[i];
+        }
+        double rand = random.nextDouble() * total;
+        for (int i = 0; i < list.size(); i++) {
+            rand -= weights[i];
+            if(rand < 0) {
+                return list.get(i);
             }
-            if(priority.equals(EntityConstants.NORMAL)) {
-                if(curPriority.equals(EntityConstants.HIGH)) {
-                    return -1;
-                }
+        }
+        return list.get(list.size() - 1);
+    }
+
+    private ChannelDB powerOfTwoChoices(List<ChannelDB> list) {
+        int first = random.nextInt(list.size());
+        int second = random.nextInt(list.size() - 1);
+        if(second >= first) {
+            second++;
+        }
+        ChannelDB a = list.get(first);
+        ChannelDB b = list.get(second);
+        int inflightA = channelScoreboard.inflight(a.getChannelCode());
+        int inflightB = channelScoreboard.inflight(b.getChannelCode());
+        if(inflightA != inflightB) {
+            return inflightA < inflightB ? a : b;
+        }
+        double defaultLatency = defaultLatency(list);
+        return channelScoreboard.weight(a.getChannelCode(), defaultLatency) >= channelScoreboard.weight(b.getChannelCode(), defaultLatency) ? a : b;
+    }
+
+    /**
+     * 没有采样数据的渠道按候选渠道的平均延迟计算，保证新渠道能分到流量
+     */
+    private double defaultLatency(List<ChannelDB> list) {
+        double sum = 0;
+        int count = 0;
+        for (ChannelDB channel : list) {
+            double latency = channelScoreboard.latency(channel.getChannelCode());
+            if(!Double.isNaN(latency)) {
+                sum += latency;
+                count++;
             }
-            return 1;
-        } else {
-            return visibility.equals(EntityConstants.PRIVATE) ? 1 : -1;
         }
+        return count == 0 ? 1.0 : sum / count;
     }
 
     private ChannelDB random(List<ChannelDB> list) {
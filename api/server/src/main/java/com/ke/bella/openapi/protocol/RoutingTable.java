@@ -0,0 +1,240 @@
+package com.ke.bella.openapi.protocol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.ke.bella.openapi.common.EntityConstants;
+import com.ke.bella.openapi.tables.pojos.ChannelDB;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单个实体（模型/能力点）的预编译路由表：渠道按可见性和优先级分层（私有优先，其次high > normal > low），
+ * 层内按数据流向要求的安全等级升序排列，私有渠道再按所有者分组。
+ * 路由表不可变，渠道列表变化时整体重建替换。
+ */
+public class RoutingTable {
+    private static final Tier[] EMPTY = new Tier[0];
+    private static final Entry[] EMPTY_ENTRIES = new Entry[0];
+    /**
+     * 构建路由表使用的渠道列表，用于判断缓存的渠道列表是否已更新
+     */
+    @Getter
+    private final List<ChannelDB> source;
+    @Getter
+    private final List<String> channelCodes;
+    private final Tier[] tiers;
+    private final Tier[] trialTiers;
+
+    private RoutingTable(List<ChannelDB> source, List<String> channelCodes, Tier[] tiers, Tier[] trialTiers) {
+        this.source = source;
+        this.channelCodes = channelCodes;
+        this.tiers = tiers;
+        this.trialTiers = trialTiers;
+    }
+
+    public static RoutingTable build(List<ChannelDB> channels) {
+        Map<Integer, List<ChannelDB>> tierMap = new HashMap<>();
+        Map<Integer, List<ChannelDB>> trialMap = new HashMap<>();
+        List<String> codes = new ArrayList<>(channels.size());
+        for (ChannelDB channel : channels) {
+            codes.add(channel.getChannelCode());
+            int rank = rank(channel);
+            tierMap.computeIfAbsent(rank, k -> new ArrayList<>()).add(channel);
+            if(isTrial(channel)) {
+                trialMap.computeIfAbsent(rank, k -> new ArrayList<>()).add(channel);
+            }
+        }
+        return new RoutingTable(channels, ImmutableList.copyOf(codes), toTiers(tierMap), toTiers(trialMap));
+    }
+
+    public static String ownerKey(String ownerType, String ownerCode) {
+        return ownerType + ":" + ownerCode;
+    }
+
+    /**
+     * 是否存在账户可见、且满足安全等级的渠道（不考虑可用性）
+     */
+    public boolean hasEligible(byte safetyLevel, String ownerKey) {
+        for (Tier tier : tiers) {
+            Entry[] entries = tier.entries(ownerKey);
+            if(entries.length > 0 && entries[0].safetyLimit <= safetyLevel) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasTrial() {
+        return trialTiers.length > 0;
+    }
+
+    /**
+     * 返回优先级最高的一层中，账户可见、满足安全等级且可用的渠道
+     */
+    public List<ChannelDB> pick(byte safetyLevel, String ownerKey, Set<String> unavailable) {
+        return pick(safetyLevel, ownerKey, unavailable, Collections.emptySet());
+    }
+
+    /**
+     * 同上，并排除指定渠道（不论是否受可用性标记影响），用于失败转移
+     */
+    public List<ChannelDB> pick(byte safetyLevel, String ownerKey, Set<String> unavailable, Set<String> excluded) {
+        for (Tier tier : tiers) {
+            List<ChannelDB> result = pick(tier.entries(ownerKey), safetyLevel, unavailable, excluded);
+            if(!result.isEmpty()) {
+                return result;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 返回优先级最高的一层中可用的试用渠道
+     */
+    public List<ChannelDB> pickTrial(Set<String> unavailable) {
+        return pickTrial(unavailable, Collections.emptySet());
+    }
+
+    public List<ChannelDB> pickTrial(Set<String> unavailable, Set<String> excluded) {
+        for (Tier tier : trialTiers) {
+            List<ChannelDB> result = pick(tier.all, Byte.MAX_VALUE, unavailable, excluded);
+            if(!result.isEmpty()) {
+                return result;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * mock请求不做过滤，返回优先级最高的一层渠道
+     */
+    public List<ChannelDB> pickAny() {
+        return tiers.length == 0 ? Collections.emptyList() : tiers[0].channels;
+    }
+
+    private static List<ChannelDB> pick(Entry[] entries, byte safetyLevel, Set<String> unavailable, Set<String> excluded) {
+        List<ChannelDB> result = null;
+        for (Entry entry : entries) {
+            if(entry.safetyLimit > safetyLevel) {
+                break;
+            }
+            String channelCode = entry.channel.getChannelCode();
+            if(excluded.contains(channelCode)) {
+                continue;
+            }
+            if(entry.alwaysAvailable || !unavailable.contains(channelCode)) {
+                if(result == null) {
+                    result = new ArrayList<>(entries.length);
+                }
+                result.add(entry.channel);
+            }
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    private static Tier[] toTiers(Map<Integer, List<ChannelDB>> tierMap) {
+        if(tierMap.isEmpty()) {
+            return EMPTY;
+        }
+        return tierMap.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(e -> new Tier(e.getKey() < 3, e.getValue()))
+                .toArray(Tier[]::new);
+    }
+
+    private static boolean isTrial(ChannelDB channel) {
+        return channel.getTrialEnabled() != null && 1 == channel.getTrialEnabled() && !EntityConstants.PRIVATE.equals(channel.getVisibility());
+    }
+
+    /**
+     * 层级排序：私有渠道优先于公开渠道，同一可见性下high > normal > low
+     */
+    private static int rank(ChannelDB channel) {
+        int rank;
+        if(EntityConstants.HIGH.equals(channel.getPriority())) {
+            rank = 0;
+        } else if(EntityConstants.NORMAL.equals(channel.getPriority())) {
+            rank = 1;
+        } else {
+            rank = 2;
+        }
+        return EntityConstants.PRIVATE.equals(channel.getVisibility()) ? rank : rank + 3;
+    }
+
+    static byte getSafetyLevelLimit(String dataDestination) {
+        if(dataDestination == null) {
+            return 40;
+        }
+        switch (dataDestination) {
+        case EntityConstants.PROTECTED:
+            return 10;
+        case EntityConstants.INNER:
+            return 20;
+        case EntityConstants.MAINLAND:
+            return 30;
+        case EntityConstants.OVERSEAS:
+            return 40;
+        }
+        return 40;
+    }
+
+    private static class Tier {
+        private final boolean isPrivate;
+        private final List<ChannelDB> channels;
+        private final Entry[] all;
+        private final Map<String, Entry[]> byOwner;
+
+        Tier(boolean isPrivate, List<ChannelDB> channels) {
+            this.isPrivate = isPrivate;
+            this.channels = ImmutableList.copyOf(channels);
+            this.all = toEntries(channels);
+            if(isPrivate) {
+                Map<String, List<ChannelDB>> owners = new LinkedHashMap<>();
+                channels.forEach(channel -> owners.computeIfAbsent(ownerKey(channel.getOwnerType(), channel.getOwnerCode()),
+                        k -> new ArrayList<>()).add(channel));
+                ImmutableMap.Builder<String, Entry[]> builder = ImmutableMap.builder();
+                owners.forEach((owner, list) -> builder.put(owner, toEntries(list)));
+                this.byOwner = builder.build();
+            } else {
+                this.byOwner = ImmutableMap.of();
+            }
+        }
+
+        Entry[] entries(String ownerKey) {
+            if(!isPrivate) {
+                return all;
+            }
+            Entry[] entries = byOwner.get(ownerKey);
+            return entries == null ? EMPTY_ENTRIES : entries;
+        }
+
+        private static Entry[] toEntries(List<ChannelDB> channels) {
+            return channels.stream()
+                    .map(Entry::new)
+                    .sorted(Comparator.comparingInt(e -> e.safetyLimit))
+                    .toArray(Entry[]::new);
+        }
+    }
+
+    private static class Entry {
+        private final ChannelDB channel;
+        private final byte safetyLimit;
+        //受保护和内部部署的渠道不受可用性标记影响
+        private final boolean alwaysAvailable;
+
+        Entry(ChannelDB channel) {
+            this.channel = channel;
+            this.safetyLimit = getSafetyLevelLimit(channel.getDataDestination());
+            this.alwaysAvailable = EntityConstants.PROTECTED.equals(channel.getDataDestination())
+                    || EntityConstants.INNER.equals(channel.getDataDestination());
+        }
+    }
+}
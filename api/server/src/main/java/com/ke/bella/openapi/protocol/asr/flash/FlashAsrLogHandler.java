@@ -2,7 +2,6 @@ package com.ke.bella.openapi.protocol.asr.flash;
 
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.protocol.log.EndpointLogHandler;
-import com.ke.bella.openapi.utils.DateTimeUtils;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
@@ -15,7 +14,7 @@ public class FlashAsrLogHandler implements EndpointLogHandler {
         if(processData.getResponse().getError() != null) {
             processData.setUsage(1);
         }
-        int ttlt = (int) (DateTimeUtils.getCurrentSeconds() - processData.getRequestTime());
+        int ttlt = (int) (processData.getLogTime() - processData.getRequestTime());
         Map<String, Object> metrics = new HashMap<>();
         metrics.put("ttlt", ttlt);
         processData.setMetrics(metrics);
@@ -5,7 +5,6 @@ import com.google.common.collect.Lists;
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.protocol.OpenapiResponse;
 import com.ke.bella.openapi.protocol.log.EndpointLogHandler;
-import com.ke.bella.openapi.utils.DateTimeUtils;
 import com.ke.bella.openapi.utils.TokenCounter;
 import com.knuddels.jtokkit.api.EncodingType;
 import org.apache.commons.collections4.CollectionUtils;
@@ -28,7 +27,7 @@ public class CompletionLogHandler implements EndpointLogHandler {
         if(processData.getResponse() instanceof CompletionResponse) {
             response = (CompletionResponse) processData.getResponse();
         }
-        long created = response == null || response.getCreated() <= 0 ? DateTimeUtils.getCurrentSeconds() : response.getCreated();
+        long created = response == null || response.getCreated() <= 0 ? processData.getLogTime() : response.getCreated();
         long firstPackageTime = processData.getFirstPackageTime();
         CompletionRequest request = (CompletionRequest) processData.getRequest();
         String encodingType = processData.getEncodingType();
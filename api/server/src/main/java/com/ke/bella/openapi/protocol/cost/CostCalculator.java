@@ -1,5 +1,7 @@
 package com.ke.bella.openapi.protocol.cost;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.ke.bella.openapi.protocol.asr.flash.FlashAsrPriceInfo;
 import com.ke.bella.openapi.protocol.realtime.RealTimePriceInfo;
 import com.ke.bella.openapi.protocol.completion.CompletionPriceInfo;
@@ -12,26 +14,32 @@ import com.ke.bella.openapi.utils.MatchUtils;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class CostCalculator  {
+    //endpoint对应的计费实现，首次匹配后缓存（包括未实现的endpoint）
+    private static final ConcurrentHashMap<String, Optional<EndpointCostCalculator>> calculators = new ConcurrentHashMap<>();
+    //解析后的价格，按价格类型和priceInfo内容缓存，渠道价格修改后内容变化即使用新的缓存项
+    private static final Cache<Pair<Class<?>, String>, Optional<Object>> prices = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
 
     public static BigDecimal calculate(String endpoint, String priceInfo, Object usage) {
-        EndpointCostCalculator calculator = Arrays.stream(CostCalculators.values()).filter(t -> MatchUtils.matchUrl(t.endpoint, endpoint))
-                .findAny()
-                .map(CostCalculators::getCalculator)
+        EndpointCostCalculator calculator = calculator(endpoint)
                 .orElseThrow(() -> new RuntimeException("no calculator implemented for " + endpoint));
         return calculator.calculate(priceInfo, usage);
     }
 
     public static boolean validate(String endpoint, String priceInfo) {
-        EndpointCostCalculator calculator = Arrays.stream(CostCalculators.values()).filter(t -> MatchUtils.matchUrl(t.endpoint, endpoint))
-                .findAny()
-                .map(CostCalculators::getCalculator)
-                .orElse(null);
+        EndpointCostCalculator calculator = calculator(endpoint).orElse(null);
         if(calculator == null) {
             LOGGER.warn("no calculator implemented for " + endpoint);
             return true;
@@ -39,6 +47,21 @@ public class CostCalculator  {
         return calculator.checkPriceInfo(priceInfo);
     }
 
+    private static Optional<EndpointCostCalculator> calculator(String endpoint) {
+        return calculators.computeIfAbsent(endpoint, key -> Arrays.stream(CostCalculators.values())
+                .filter(t -> MatchUtils.matchUrl(t.endpoint, key))
+                .findAny()
+                .map(CostCalculators::getCalculator));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T parsePrice(String priceInfo, Class<T> type) {
+        if(priceInfo == null) {
+            return null;
+        }
+        return (T) prices.get(Pair.of(type, priceInfo), key -> Optional.ofNullable(JacksonUtils.deserialize(priceInfo, type))).orElse(null);
+    }
+
     @AllArgsConstructor
     @Getter
     enum CostCalculators {
@@ -56,7 +79,7 @@ public class CostCalculator  {
     static EndpointCostCalculator completion = new EndpointCostCalculator() {
         @Override
         public BigDecimal calculate(String priceInfo, Object usage) {
-            CompletionPriceInfo price = JacksonUtils.deserialize(priceInfo, CompletionPriceInfo.class);
+            CompletionPriceInfo price = parsePrice(priceInfo, CompletionPriceInfo.class);
             CompletionResponse.TokenUsage tokenUsage = (CompletionResponse.TokenUsage) usage;
             return price.getInput().multiply(BigDecimal.valueOf(tokenUsage.getPrompt_tokens() / 1000.0))
                     .add(price.getOutput().multiply(BigDecimal.valueOf(tokenUsage.getCompletion_tokens() / 1000.0)));
@@ -64,7 +87,7 @@ public class CostCalculator  {
 
         @Override
         public boolean checkPriceInfo(String priceInfo) {
-            CompletionPriceInfo price = JacksonUtils.deserialize(priceInfo, CompletionPriceInfo.class);
+            CompletionPriceInfo price = parsePrice(priceInfo, CompletionPriceInfo.class);
             return price != null && price.getInput() != null && price.getOutput() != null;
         }
     };
@@ -72,14 +95,14 @@ public class CostCalculator  {
     static EndpointCostCalculator embedding = new EndpointCostCalculator() {
         @Override
         public BigDecimal calculate(String priceInfo, Object usage) {
-            EmbeddingPriceInfo price = JacksonUtils.deserialize(priceInfo, EmbeddingPriceInfo.class);
+            EmbeddingPriceInfo price = parsePrice(priceInfo, EmbeddingPriceInfo.class);
             EmbeddingResponse.TokenUsage tokenUsage = (EmbeddingResponse.TokenUsage) usage;
             return price.getInput().multiply(BigDecimal.valueOf(tokenUsage.getPrompt_tokens() / 1000.0));
         }
 
         @Override
         public boolean checkPriceInfo(String priceInfo) {
-            EmbeddingPriceInfo price = JacksonUtils.deserialize(priceInfo, EmbeddingPriceInfo.class);
+            EmbeddingPriceInfo price = parsePrice(priceInfo, EmbeddingPriceInfo.class);
             return price != null && price.getInput() != null;
         }
     };
@@ -87,14 +110,14 @@ public class CostCalculator  {
     static EndpointCostCalculator tts = new EndpointCostCalculator() {
         @Override
         public BigDecimal calculate(String priceInfo, Object usage) {
-            TtsPriceInfo price = JacksonUtils.deserialize(priceInfo, TtsPriceInfo.class);
+            TtsPriceInfo price = parsePrice(priceInfo, TtsPriceInfo.class);
             int inputLength = (int) usage;
             return price.getInput().multiply(BigDecimal.valueOf(inputLength / 10000.0));
         }
 
         @Override
         public boolean checkPriceInfo(String priceInfo) {
-            TtsPriceInfo price = JacksonUtils.deserialize(priceInfo, TtsPriceInfo.class);
+            TtsPriceInfo price = parsePrice(priceInfo, TtsPriceInfo.class);
             return price != null && price.getInput() != null;
         }
     };
@@ -102,13 +125,13 @@ public class CostCalculator  {
     static EndpointCostCalculator asr_flash = new EndpointCostCalculator() {
         @Override
         public BigDecimal calculate(String priceInfo, Object usage) {
-            FlashAsrPriceInfo price = JacksonUtils.deserialize(priceInfo, FlashAsrPriceInfo.class);
+            FlashAsrPriceInfo price = parsePrice(priceInfo, FlashAsrPriceInfo.class);
             return price.getPrice();
         }
 
         @Override
         public boolean checkPriceInfo(String priceInfo) {
-            FlashAsrPriceInfo price = JacksonUtils.deserialize(priceInfo, FlashAsrPriceInfo.class);
+            FlashAsrPriceInfo price = parsePrice(priceInfo, FlashAsrPriceInfo.class);
             return price != null && price.getPrice() != null;
         }
     };
@@ -116,13 +139,13 @@ public class CostCalculator  {
     static EndpointCostCalculator realtime = new EndpointCostCalculator() {
         @Override
         public BigDecimal calculate(String priceInfo, Object usage) {
-            RealTimePriceInfo price = JacksonUtils.deserialize(priceInfo, RealTimePriceInfo.class);
+            RealTimePriceInfo price = parsePrice(priceInfo, RealTimePriceInfo.class);
             return BigDecimal.valueOf((price.getPrice().doubleValue() / 3600 * 100) * Double.valueOf(usage.toString()));
         }
 
         @Override
         public boolean checkPriceInfo(String priceInfo) {
-            RealTimePriceInfo price = JacksonUtils.deserialize(priceInfo, RealTimePriceInfo.class);
+            RealTimePriceInfo price = parsePrice(priceInfo, RealTimePriceInfo.class);
             return price != null && price.getPrice() != null;
         }
     };
@@ -1,41 +1,160 @@
 package com.ke.bella.openapi.protocol.cost;
 
 import java.math.BigDecimal;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.springframework.scheduling.annotation.Scheduled;
 
 import com.ke.bella.openapi.utils.DateTimeUtils;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
 public class CostCounter {
     private final CostRecorder costRecorder;
-    private final ConcurrentHashMap<String, AtomicReference<BigDecimal>> costCache = new ConcurrentHashMap<>();
+    private final FlushListener flushListener;
+    private final MeterRegistry meterRegistry;
+    private final PendingListener pendingListener;
+    //累加时持读锁，刷写时持写锁交换缓存，保证刷写的费用与确认的事件一致
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ConcurrentHashMap<String, AtomicReference<BigDecimal>> costCache = new ConcurrentHashMap<>();
+    //已计入缓存、等待刷写后确认的事件
+    private List<Long> processed = new ArrayList<>();
 
     public CostCounter(CostRecorder costRecorder) {
+        this(costRecorder, null);
+    }
+
+    public CostCounter(CostRecorder costRecorder, FlushListener flushListener) {
+        this(costRecorder, flushListener, Metrics.globalRegistry);
+    }
+
+    public CostCounter(CostRecorder costRecorder, FlushListener flushListener, MeterRegistry meterRegistry) {
+        this(costRecorder, flushListener, meterRegistry, null);
+    }
+
+    public CostCounter(CostRecorder costRecorder, FlushListener flushListener, MeterRegistry meterRegistry, PendingListener pendingListener) {
         this.costRecorder = costRecorder;
+        this.flushListener = flushListener;
+        this.meterRegistry = meterRegistry;
+        this.pendingListener = pendingListener;
     }
 
     public void delta(String apikey, BigDecimal cost) {
-        AtomicReference<BigDecimal> amount = costCache.computeIfAbsent(apikey, k -> new AtomicReference<>(BigDecimal.ZERO));
-        amount.accumulateAndGet(cost, BigDecimal::add);
+        lock.readLock().lock();
+        try {
+            AtomicReference<BigDecimal> amount = costCache.computeIfAbsent(apikey, k -> new AtomicReference<>(BigDecimal.ZERO));
+            amount.accumulateAndGet(cost, BigDecimal::add);
+            if(pendingListener != null) {
+                pendingListener.delta(apikey, cost);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 事件的费用已计入（或无需计费），下次刷写完成后通知FlushListener
+     */
+    public void processed(Long journalOffset) {
+        if(flushListener == null || journalOffset == null) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            synchronized (processed) {
+                processed.add(journalOffset);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    @Scheduled(fixedRate = 60000)
+    //上次刷写结束后再计时，刷写较慢时不与下一次重叠
+    @Scheduled(fixedDelay = 60000)
     public synchronized void flush() {
-        if(!costCache.isEmpty()) {
-            Set<String> current = costCache.keySet();
-            String month = DateTimeUtils.getCurrentMonth();
-            current.forEach(apikey -> {
-                        AtomicReference<BigDecimal> cost = costCache.remove(apikey);
-                        costRecorder.recordCost(apikey, month, cost.get());
-                    }
-            );
+        Map<String, AtomicReference<BigDecimal>> current;
+        List<Long> flushed;
+        lock.writeLock().lock();
+        try {
+            current = costCache;
+            flushed = processed;
+            costCache = new ConcurrentHashMap<>();
+            processed = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if(!current.isEmpty()) {
+            Map<String, BigDecimal> costs = new HashMap<>(current.size());
+            current.forEach((apikey, cost) -> costs.put(apikey, cost.get()));
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                costRecorder.recordCosts(DateTimeUtils.getCurrentMonth(), costs);
+                success = true;
+            } catch (RuntimeException e) {
+                //写入失败时费用和待确认的事件放回，下次刷写时重试
+                requeue(current, flushed);
+                LOGGER.warn("flush costs failed, requeue " + costs.size() + " apikeys, " + e.getMessage(), e);
+                return;
+            } finally {
+                meterRegistry.timer("bella.cost.flush", "outcome", success ? "success" : "error")
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            meterRegistry.counter("bella.cost.flush.rows").increment(costs.size());
+            if(pendingListener != null) {
+                pendingListener.settled(costs);
+            }
+        }
+        if(flushListener != null && !flushed.isEmpty()) {
+            flushListener.flushed(flushed);
+        }
+    }
+
+    private void requeue(Map<String, AtomicReference<BigDecimal>> current, List<Long> flushed) {
+        lock.readLock().lock();
+        try {
+            current.forEach((apikey, cost) -> costCache.computeIfAbsent(apikey, k -> new AtomicReference<>(BigDecimal.ZERO))
+                    .accumulateAndGet(cost.get(), BigDecimal::add));
+            synchronized (processed) {
+                processed.addAll(flushed);
+            }
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
     public interface CostRecorder {
         void recordCost(String apikey, String month, BigDecimal cost);
+
+        /**
+         * 一次刷写的全部费用，默认逐个记录。抛出异常时全部费用会在下次刷写时重试，实现需保证失败时没有部分写入
+         */
+        default void recordCosts(String month, Map<String, BigDecimal> costs) {
+            costs.forEach((apikey, cost) -> recordCost(apikey, month, cost));
+        }
+    }
+
+    /**
+     * 未刷写费用的变化：累加时delta，刷写成功后settled
+     */
+    public interface PendingListener {
+        void delta(String apikey, BigDecimal cost);
+
+        void settled(Map<String, BigDecimal> costs);
+    }
+
+    public interface FlushListener {
+        void flushed(List<Long> journalOffsets);
     }
 }
@@ -3,7 +3,6 @@ package com.ke.bella.openapi.protocol.embedding;
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.protocol.OpenapiResponse;
 import com.ke.bella.openapi.protocol.log.EndpointLogHandler;
-import com.ke.bella.openapi.utils.DateTimeUtils;
 import com.ke.bella.openapi.utils.TokenCounter;
 import com.knuddels.jtokkit.api.EncodingType;
 import org.springframework.stereotype.Component;
@@ -36,7 +35,7 @@ public class EmbeddingLogHandler implements EndpointLogHandler {
             usage.setTotal_tokens(inputToken);
         }
         long startTime = processData.getRequestTime();
-        int ttlt = (int) (DateTimeUtils.getCurrentSeconds() - startTime);
+        int ttlt = (int) (processData.getLogTime() - startTime);
         Map<String, Object> map = new HashMap<>();
         map.put("ttlt", ttlt);
         map.put("token", usage.getTotal_tokens());
@@ -6,14 +6,21 @@ import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.script.LuaScriptExecutor;
 import com.ke.bella.openapi.script.ScriptType;
 import com.ke.bella.openapi.utils.DateTimeUtils;
+import com.ke.bella.openapi.utils.StageMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 @Slf4j
@@ -27,6 +34,16 @@ public class LimiterManager {
     private static final String RPM_KEY_FORMAT = "bella-openapi-limiter-rpm:%s:%s";
     private static final String RPM_COUNT_KEY_FORMAT = "bella-openapi-limiter-rpm-count:%s:%s";
     private static final String CONCURRENT_KEY_FORMAT = "bella-openapi-limiter-concurrent:%s:%s";
+    private static final String RPM_BUCKET_KEY_FORMAT = "bella-openapi-limiter-rpm-bucket:%s:%s";
+    private static final int WINDOW_SIZE = 60;
+
+    /**
+     * rpm计数方式：zset（按请求记录）、bucket（按固定时间桶计数）、dual（同时写入两者，按zset读取，用于迁移期间预热桶数据）
+     */
+    @Value("${bella.openapi.limiter.rpm.mode:zset}")
+    private String rpmMode;
+    @Value("${bella.openapi.limiter.rpm.bucket-seconds:1}")
+    private int bucketSeconds;
 
     public void record(EndpointProcessData processData) {
         if(processData.getChannelCode() == null) {
@@ -48,7 +65,69 @@ public class LimiterManager {
         decrementConcurrentCount(akCode, entityCode);
     }
 
+    /**
+     * 批量记录一批已结束的请求：rpm的zset需要按请求写入；并发计数和rpm时间桶按apikey+模型聚合后每个key调用一次脚本。
+     * 所有脚本调用通过一个流水线发送，每次调用只访问同一个apikey+模型的key，兼容Redis Cluster
+     */
+    public void recordBatch(List<EndpointProcessData> processDataList) {
+        StageMetrics.run("limiter_record", StageMetrics.NO_CONTEXT, () -> doRecordBatch(processDataList));
+    }
+
+    private void doRecordBatch(List<EndpointProcessData> processDataList) {
+        long currentTimestamp = DateTimeUtils.getCurrentSeconds();
+        Map<String, Integer> concurrent = new LinkedHashMap<>();
+        Map<String, Integer> requests = new LinkedHashMap<>();
+        RBatch batch = redisson.createBatch();
+        boolean pending = false;
+        try {
+            for (EndpointProcessData processData : processDataList) {
+                String entityCode = processData.getModel() != null ? processData.getModel() : processData.getEndpoint();
+                String akCode = processData.getAkCode();
+                if(processData.getChannelCode() == null || entityCode == null || akCode == null) {
+                    continue;
+                }
+                concurrent.merge(String.format(CONCURRENT_KEY_FORMAT, entityCode, akCode), 1, Integer::sum);
+                if(processData.getRequestId() == null) {
+                    continue;
+                }
+                if(!"zset".equals(rpmMode)) {
+                    requests.merge(String.format(RPM_BUCKET_KEY_FORMAT, entityCode, akCode), 1, Integer::sum);
+                }
+                if(!"bucket".equals(rpmMode)) {
+                    List<Object> keys = Lists.newArrayList(String.format(RPM_KEY_FORMAT, entityCode, akCode),
+                            String.format(RPM_COUNT_KEY_FORMAT, entityCode, akCode));
+                    executor.execute(batch, "/rpm", ScriptType.limiter, keys, Lists.<Object>newArrayList(currentTimestamp, processData.getRequestId()));
+                    pending = true;
+                }
+            }
+            for (Map.Entry<String, Integer> entry : concurrent.entrySet()) {
+                executor.execute(batch, "/batch", ScriptType.limiter, Lists.newArrayList(entry.getKey()),
+                        Lists.<Object>newArrayList(1, currentTimestamp, bucketSeconds, entry.getValue()));
+                pending = true;
+            }
+            for (Map.Entry<String, Integer> entry : requests.entrySet()) {
+                executor.execute(batch, "/batch", ScriptType.limiter, Lists.newArrayList(entry.getKey()),
+                        Lists.<Object>newArrayList(0, currentTimestamp, bucketSeconds, entry.getValue()));
+                pending = true;
+            }
+            if(pending) {
+                batch.execute();
+            }
+        } catch (IOException e) {
+            LOGGER.warn(e.getMessage(), e);
+        }
+    }
+
     public void incrementRequestCountPerMinute(String akCode, String entityCode, String requestId, long currentTimestamp) {
+        if(!"zset".equals(rpmMode)) {
+            incrementRequestBucket(akCode, entityCode, currentTimestamp);
+        }
+        if(!"bucket".equals(rpmMode)) {
+            incrementRequestZset(akCode, entityCode, requestId, currentTimestamp);
+        }
+    }
+
+    private void incrementRequestZset(String akCode, String entityCode, String requestId, long currentTimestamp) {
         String rpmKey = String.format(RPM_KEY_FORMAT, entityCode, akCode);
         String countKey = String.format(RPM_COUNT_KEY_FORMAT, entityCode, akCode);
 
@@ -65,13 +144,51 @@ public class LimiterManager {
     }
 
 
+    private void incrementRequestBucket(String akCode, String entityCode, long currentTimestamp) {
+        List<Object> keys = Lists.newArrayList(String.format(RPM_BUCKET_KEY_FORMAT, entityCode, akCode));
+        List<Object> params = new ArrayList<>();
+        params.add(currentTimestamp);
+        params.add(bucketSeconds);
+        try {
+            executor.execute("/rpm_bucket", ScriptType.limiter, keys, params);
+        } catch (IOException e) {
+            LOGGER.warn(e.getMessage(), e);
+        }
+    }
+
     public Long getRequestCountPerMinute(String akCode, String entityCode) {
+        return StageMetrics.time("limiter_rpm_query", () -> doGetRequestCountPerMinute(akCode, entityCode));
+    }
+
+    private Long doGetRequestCountPerMinute(String akCode, String entityCode) {
+        if("bucket".equals(rpmMode)) {
+            return getRequestBucketCount(akCode, entityCode);
+        }
         String countKey = String.format(RPM_COUNT_KEY_FORMAT, entityCode, akCode);
         Object count = redisson.getBucket(countKey).get();
         return count != null ? Long.parseLong(count.toString()) : 0L;
     }
     
+    /**
+     * 汇总一分钟窗口内的桶，写入时只在新建桶时清理过期桶，读取时需要按时间过滤
+     */
+    private Long getRequestBucketCount(String akCode, String entityCode) {
+        RMap<String, String> buckets = redisson.getMap(String.format(RPM_BUCKET_KEY_FORMAT, entityCode, akCode), StringCodec.INSTANCE);
+        long minTimestamp = DateTimeUtils.getCurrentSeconds() - WINDOW_SIZE;
+        long count = 0;
+        for (Map.Entry<String, String> bucket : buckets.readAllMap().entrySet()) {
+            if(Long.parseLong(bucket.getKey()) > minTimestamp) {
+                count += Long.parseLong(bucket.getValue());
+            }
+        }
+        return count;
+    }
+
     public void incrementConcurrentCount(String akCode, String entityCode) {
+        StageMetrics.run("limiter_concurrent", () -> doIncrementConcurrentCount(akCode, entityCode));
+    }
+
+    private void doIncrementConcurrentCount(String akCode, String entityCode) {
         String concurrentKey = String.format(CONCURRENT_KEY_FORMAT, entityCode, akCode);
         List<Object> keys = Lists.newArrayList(concurrentKey);
         List<Object> params = new ArrayList<>();
@@ -84,6 +201,10 @@ public class LimiterManager {
     }
     
     public void decrementConcurrentCount(String akCode, String entityCode) {
+        StageMetrics.run("limiter_concurrent", () -> doDecrementConcurrentCount(akCode, entityCode));
+    }
+
+    private void doDecrementConcurrentCount(String akCode, String entityCode) {
         String concurrentKey = String.format(CONCURRENT_KEY_FORMAT, entityCode, akCode);
         List<Object> keys = Lists.newArrayList(concurrentKey);
         List<Object> params = new ArrayList<>();
@@ -96,8 +217,10 @@ public class LimiterManager {
     }
     
     public Long getCurrentConcurrentCount(String akCode, String entityCode) {
-        String concurrentKey = String.format(CONCURRENT_KEY_FORMAT, entityCode, akCode);
-        Object count = redisson.getBucket(concurrentKey).get();
-        return count != null ? Long.parseLong(count.toString()) : 0L;
+        return StageMetrics.time("limiter_concurrent_query", () -> {
+            String concurrentKey = String.format(CONCURRENT_KEY_FORMAT, entityCode, akCode);
+            Object count = redisson.getBucket(concurrentKey).get();
+            return count != null ? Long.parseLong(count.toString()) : 0L;
+        });
     }
 }
@@ -0,0 +1,241 @@
+package com.ke.bella.openapi.protocol.limiter;
+
+import com.google.common.collect.Lists;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.common.exception.ChannelException;
+import com.ke.bella.openapi.script.LuaScriptExecutor;
+import com.ke.bella.openapi.script.ScriptType;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * apikey + 模型维度的rpm和并发限制。每个节点在本地持有许可，许可不足时通过lua脚本从redis批量租借，
+ * 大部分请求的准入判断不需要访问redis；集群总量不会超过限制，误差为各节点租借后未用完的许可。
+ * 限制配置示例：bella.openapi.limiter.quota.apikey-rpm={'ak-code':100}，同时配置了apikey和模型的限制时取较小值
+ */
+@Component
+@Slf4j
+public class QuotaLimiter {
+    private static final String RPM_LEASE_KEY_FORMAT = "bella-openapi-limiter-rpm-lease:%s:%s:%s";
+    private static final String CONCURRENT_LEASE_KEY_FORMAT = "bella-openapi-limiter-concurrent-lease:%s:%s";
+    //并发配额不足时，重新租借的最小间隔
+    private static final long CONCURRENT_RETRY_MILLIS = 200;
+    private static final long IDLE_MILLIS = 5 * 60 * 1000;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    @Autowired
+    private LuaScriptExecutor executor;
+    @Value("${bella.openapi.limiter.quota.enabled:false}")
+    private boolean enabled;
+    @Value("${bella.openapi.limiter.quota.lease-size:10}")
+    private int leaseSize;
+    @Value("${bella.openapi.limiter.quota.default-rpm:0}")
+    private int defaultRpm;
+    @Value("${bella.openapi.limiter.quota.default-concurrent:0}")
+    private int defaultConcurrent;
+    @Value("#{${bella.openapi.limiter.quota.apikey-rpm:{:}}}")
+    private Map<String, Integer> apikeyRpm;
+    @Value("#{${bella.openapi.limiter.quota.model-rpm:{:}}}")
+    private Map<String, Integer> modelRpm;
+    @Value("#{${bella.openapi.limiter.quota.apikey-concurrent:{:}}}")
+    private Map<String, Integer> apikeyConcurrent;
+    @Value("#{${bella.openapi.limiter.quota.model-concurrent:{:}}}")
+    private Map<String, Integer> modelConcurrent;
+
+    /**
+     * 请求准入，超过限制时抛出RateLimitException；占用的并发配额绑定到请求上，请求结束时释放
+     *
+     * @param akCode     apikey
+     * @param entityCode 模型，没有模型时为能力点
+     */
+    public void acquire(EndpointProcessData processData, String akCode, String entityCode) {
+        if(!enabled || akCode == null || entityCode == null) {
+            return;
+        }
+        int rpm = limit(apikeyRpm, modelRpm, defaultRpm, akCode, entityCode);
+        int concurrent = limit(apikeyConcurrent, modelConcurrent, defaultConcurrent, akCode, entityCode);
+        if(rpm <= 0 && concurrent <= 0) {
+            return;
+        }
+        String key = akCode + ":" + entityCode;
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(akCode, entityCode));
+        if(concurrent > 0 && !bucket.tryAcquireSlot(concurrent)) {
+            throw new ChannelException.RateLimitException("并行请求数不能高于" + concurrent);
+        }
+        if(rpm > 0 && !bucket.tryAcquirePermit(rpm)) {
+            if(concurrent > 0) {
+                bucket.releaseSlot();
+            }
+            throw new ChannelException.RateLimitException("每分钟最多请求" + rpm + "次");
+        }
+        if(concurrent > 0) {
+            synchronized (processData) {
+                processData.setQuotaSlot(key);
+            }
+        }
+    }
+
+    /**
+     * 请求结束时释放并发配额，日志入队和请求线程退出时都会调用，只生效一次
+     */
+    public void release(EndpointProcessData processData) {
+        if(processData == null) {
+            return;
+        }
+        String key;
+        synchronized (processData) {
+            key = processData.getQuotaSlot();
+            processData.setQuotaSlot(null);
+        }
+        if(key == null) {
+            return;
+        }
+        Bucket bucket = buckets.get(key);
+        if(bucket != null) {
+            bucket.releaseSlot();
+        }
+    }
+
+    /**
+     * 归还多余的并发配额并刷新心跳，清理长时间未使用的本地配额
+     */
+    @Scheduled(fixedDelayString = "${bella.openapi.limiter.quota.refresh-interval-millis:5000}")
+    public void refresh() {
+        if(!enabled) {
+            return;
+        }
+        long now = DateTimeUtils.getCurrentMills();
+        buckets.forEach((key, bucket) -> {
+            boolean idle = now - bucket.lastAccess > IDLE_MILLIS;
+            bucket.refreshSlots(idle);
+            if(idle && bucket.isEmpty()) {
+                buckets.remove(key, bucket);
+            }
+        });
+    }
+
+    private static int limit(Map<String, Integer> byApikey, Map<String, Integer> byModel, int defaultLimit, String akCode, String entityCode) {
+        Integer apikeyLimit = byApikey.get(akCode);
+        Integer modelLimit = byModel.get(entityCode);
+        if(apikeyLimit != null && modelLimit != null) {
+            return Math.min(apikeyLimit, modelLimit);
+        }
+        if(apikeyLimit != null) {
+            return apikeyLimit;
+        }
+        return modelLimit != null ? modelLimit : defaultLimit;
+    }
+
+    private int leaseRpm(String akCode, String entityCode, long minute, int limit) {
+        String key = String.format(RPM_LEASE_KEY_FORMAT, entityCode, akCode, minute);
+        return lease("/rpm_lease", Lists.newArrayList(key), Lists.<Object>newArrayList(limit, batch(limit)));
+    }
+
+    private int leaseSlots(String akCode, String entityCode, int target, int limit) {
+        String key = String.format(CONCURRENT_LEASE_KEY_FORMAT, entityCode, akCode);
+        return lease("/concurrent_lease", Lists.newArrayList(key),
+                Lists.<Object>newArrayList(nodeId, target, limit, DateTimeUtils.getCurrentSeconds()));
+    }
+
+    private int lease(String script, List<Object> keys, List<Object> params) {
+        try {
+            Object result = executor.execute(script, ScriptType.limiter, keys, params);
+            return result == null ? 0 : Integer.parseInt(result.toString());
+        } catch (Exception e) {
+            //redis不可用时不做限制
+            LOGGER.warn("lease quota failed, " + e.getMessage(), e);
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 限制较小时每次租借的许可更少，减少节点间分配不均造成的误差
+     */
+    private int batch(int limit) {
+        return Math.max(1, Math.min(leaseSize, limit / 20));
+    }
+
+    private class Bucket {
+        private final String akCode;
+        private final String entityCode;
+        private volatile long lastAccess = DateTimeUtils.getCurrentMills();
+        //rpm：当前分钟窗口内本地剩余的许可
+        private long minute;
+        private int permits;
+        private boolean exhausted;
+        //并发：本地占用数和从集群租借的配额
+        private int inUse;
+        private int held;
+        private int concurrentLimit;
+        private long nextSlotLease;
+
+        Bucket(String akCode, String entityCode) {
+            this.akCode = akCode;
+            this.entityCode = entityCode;
+        }
+
+        synchronized boolean tryAcquirePermit(int limit) {
+            lastAccess = DateTimeUtils.getCurrentMills();
+            long current = DateTimeUtils.getCurrentSeconds() / 60;
+            if(current != minute) {
+                minute = current;
+                permits = 0;
+                exhausted = false;
+            }
+            if(permits == 0 && !exhausted) {
+                permits = leaseRpm(akCode, entityCode, minute, limit);
+                //集群配额已用完，当前窗口内不再租借
+                exhausted = permits == 0;
+            }
+            if(permits == 0) {
+                return false;
+            }
+            permits--;
+            return true;
+        }
+
+        synchronized boolean tryAcquireSlot(int limit) {
+            long now = DateTimeUtils.getCurrentMills();
+            lastAccess = now;
+            concurrentLimit = limit;
+            if(inUse >= held && now >= nextSlotLease) {
+                held = leaseSlots(akCode, entityCode, inUse + batch(limit), limit);
+                if(inUse >= held) {
+                    nextSlotLease = now + CONCURRENT_RETRY_MILLIS;
+                }
+            }
+            if(inUse >= held) {
+                return false;
+            }
+            inUse++;
+            return true;
+        }
+
+        synchronized void releaseSlot() {
+            if(inUse > 0) {
+                inUse--;
+            }
+        }
+
+        synchronized void refreshSlots(boolean idle) {
+            if(held == 0 && inUse == 0) {
+                return;
+            }
+            int target = idle ? inUse : Math.min(held, inUse + batch(concurrentLimit));
+            held = leaseSlots(akCode, entityCode, target, concurrentLimit);
+        }
+
+        synchronized boolean isEmpty() {
+            return inUse == 0 && held == 0;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.ke.bella.openapi.protocol.limiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Lists;
+import com.ke.bella.openapi.protocol.cost.CostCounter;
+import com.ke.bella.openapi.script.LuaScriptExecutor;
+import com.ke.bella.openapi.script.ScriptType;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已计费但尚未由CostCounter刷写到数据库的费用（单位：分）。各节点定时将本地未刷写的费用上报到redis（每个apikey一个hash，
+ * 每个节点一个带心跳的field），月额度准入时按 已刷写费用 + 本节点未刷写费用 + 其他节点未刷写费用 判断，
+ * 其他节点的值在本地缓存一个同步周期，准入时大部分请求不需要访问redis。
+ * 节点崩溃后其field在心跳超时（30秒）后删除，未刷写的费用只有在开启预写日志（bella.openapi.log.journal.enabled，需配置持久化的dir）
+ * 且使用同一目录的节点重启重放后才会重新计入；在此之前（或未开启预写日志时）月额度准入会少计这部分费用，
+ * 最多为该节点一个CostCounter刷写周期内的费用
+ */
+@Component
+@Slf4j
+public class SpendTracker implements CostCounter.PendingListener {
+    private static final String SPEND_KEY_FORMAT = "bella-openapi-limiter-spend:%s:%s";
+    private final String nodeId = UUID.randomUUID().toString();
+    //本节点未刷写的费用
+    private final ConcurrentHashMap<String, BigDecimal> pending = new ConcurrentHashMap<>();
+    //已上报到redis的apikey，费用归零后需要再上报一次以删除本节点的field
+    private final Set<String> reported = ConcurrentHashMap.newKeySet();
+    private Cache<String, BigDecimal> others;
+    @Autowired
+    private LuaScriptExecutor executor;
+    @Autowired
+    private RedissonClient redisson;
+    @Value("${bella.openapi.quota.realtime.enabled:true}")
+    private boolean enabled;
+    @Value("${bella.openapi.quota.realtime.sync-interval-millis:1000}")
+    private long syncIntervalMillis;
+
+    @PostConstruct
+    public void init() {
+        others = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(syncIntervalMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public void delta(String apikey, BigDecimal cost) {
+        if(enabled) {
+            pending.merge(apikey, cost, BigDecimal::add);
+        }
+    }
+
+    @Override
+    public void settled(Map<String, BigDecimal> costs) {
+        if(enabled) {
+            costs.forEach((apikey, cost) -> pending.computeIfPresent(apikey, (k, amount) -> {
+                BigDecimal remain = amount.subtract(cost);
+                return remain.signum() == 0 ? null : remain;
+            }));
+        }
+    }
+
+    /**
+     * 集群内该apikey未刷写的费用
+     */
+    public BigDecimal pending(String apikey) {
+        if(!enabled) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal local = pending.getOrDefault(apikey, BigDecimal.ZERO);
+        BigDecimal remote = others.get(apikey, key -> sync(key, local));
+        return local.add(remote);
+    }
+
+    private BigDecimal sync(String apikey, BigDecimal local) {
+        try {
+            Object result = executor.execute("/spend", ScriptType.limiter, Lists.newArrayList(key(apikey)), args(local));
+            if(local.signum() == 0) {
+                reported.remove(apikey);
+            } else {
+                reported.add(apikey);
+            }
+            BigDecimal others = parse(result);
+            return others == null ? BigDecimal.ZERO : others;
+        } catch (Exception e) {
+            //redis不可用时只按本节点的费用判断
+            LOGGER.warn("sync pending spend failed, " + e.getMessage(), e);
+            return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * 上报本节点未刷写的费用并刷新其他节点的值，同一周期内的所有apikey通过一次流水线发送
+     */
+    @Scheduled(fixedDelayString = "${bella.openapi.quota.realtime.sync-interval-millis:1000}")
+    public void report() {
+        if(!enabled) {
+            return;
+        }
+        Set<String> apikeys = new HashSet<>(pending.keySet());
+        apikeys.addAll(reported);
+        if(apikeys.isEmpty()) {
+            return;
+        }
+        List<String> order = new ArrayList<>(apikeys);
+        List<BigDecimal> amounts = new ArrayList<>(order.size());
+        RBatch batch = redisson.createBatch();
+        try {
+            for (String apikey : order) {
+                BigDecimal amount = pending.getOrDefault(apikey, BigDecimal.ZERO);
+                amounts.add(amount);
+                executor.execute(batch, "/spend", ScriptType.limiter, Lists.newArrayList(key(apikey)), args(amount));
+            }
+            List<?> responses = batch.execute().getResponses();
+            for (int i = 0; i < order.size() && i < responses.size(); i++) {
+                String apikey = order.get(i);
+                BigDecimal result = parse(responses.get(i));
+                if(result == null) {
+                    //脚本执行失败，本节点的值可能未写入，下个周期重新上报
+                    reported.add(apikey);
+                    continue;
+                }
+                if(amounts.get(i).signum() == 0) {
+                    reported.remove(apikey);
+                } else {
+                    reported.add(apikey);
+                }
+                others.put(apikey, result);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("report pending spend failed, " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 脚本返回其他节点费用的合计，出错时返回错误信息数组
+     */
+    private static BigDecimal parse(Object result) {
+        if(result == null) {
+            return BigDecimal.ZERO;
+        }
+        if(result instanceof String || result instanceof Number) {
+            try {
+                return new BigDecimal(result.toString());
+            } catch (NumberFormatException e) {
+                //按错误处理
+            }
+        }
+        LOGGER.warn("sync pending spend failed, script result: {}", result);
+        return null;
+    }
+
+    private static String key(String apikey) {
+        return String.format(SPEND_KEY_FORMAT, DateTimeUtils.getCurrentMonth(), apikey);
+    }
+
+    private List<Object> args(BigDecimal amount) {
+        return Lists.<Object>newArrayList(nodeId, amount.toPlainString(), DateTimeUtils.getCurrentSeconds());
+    }
+}
@@ -0,0 +1,254 @@
+package com.ke.bella.openapi.protocol.limiter;
+
+import com.google.common.collect.Lists;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.protocol.completion.CompletionRequest;
+import com.ke.bella.openapi.protocol.completion.CompletionResponse;
+import com.ke.bella.openapi.protocol.completion.Message;
+import com.ke.bella.openapi.script.LuaScriptExecutor;
+import com.ke.bella.openapi.script.ScriptType;
+import com.ke.bella.openapi.tables.pojos.ChannelDB;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import com.ke.bella.openapi.utils.JacksonUtils;
+import com.ke.bella.openapi.utils.TokenCounter;
+import com.knuddels.jtokkit.api.EncodingType;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每分钟token数（tpm）限制：准入时按请求消息和max_tokens预估token数并预占apikey+模型、渠道的额度，
+ * 请求结束后按实际用量修正；渠道额度不足时由路由排除该渠道
+ */
+@Component
+@Slf4j
+public class TpmLimiter {
+    public static final int OK = 0;
+    public static final int APIKEY_EXHAUSTED = 1;
+    public static final int CHANNEL_EXHAUSTED = 2;
+    private static final String TPM_KEY_FORMAT = "bella-openapi-limiter-tpm:%s:%s:%s";
+    private static final String CHANNEL_TPM_KEY_FORMAT = "bella-openapi-limiter-tpm-channel:%s:%s";
+    private static final long EXPIRY_SECONDS = 120;
+    @Autowired
+    private LuaScriptExecutor executor;
+    @Autowired
+    private RedissonClient redisson;
+    @Value("${bella.openapi.limiter.tpm.enabled:false}")
+    private boolean enabled;
+    @Value("${bella.openapi.limiter.tpm.default-tpm:0}")
+    private int defaultTpm;
+    //请求没有指定max_tokens时预估的输出token数
+    @Value("${bella.openapi.limiter.tpm.default-max-tokens:1024}")
+    private int defaultMaxTokens;
+    @Value("#{${bella.openapi.limiter.tpm.apikey-tpm:{:}}}")
+    private Map<String, Integer> apikeyTpm;
+    @Value("#{${bella.openapi.limiter.tpm.model-tpm:{:}}}")
+    private Map<String, Integer> modelTpm;
+    @Value("#{${bella.openapi.limiter.tpm.channel-tpm:{:}}}")
+    private Map<String, Integer> channelTpm;
+    //本节点观察到的当前分钟额度已用完的渠道 -> 分钟窗口
+    private final ConcurrentHashMap<String, Long> exhaustedChannels = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 当前分钟内已知额度用完的渠道，路由时直接排除
+     */
+    public Set<String> exhaustedChannels() {
+        if(!enabled || exhaustedChannels.isEmpty()) {
+            return Collections.emptySet();
+        }
+        long minute = currentMinute();
+        Set<String> result = new HashSet<>();
+        exhaustedChannels.forEach((channel, window) -> {
+            if(window == minute) {
+                result.add(channel);
+            } else {
+                exhaustedChannels.remove(channel, window);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 按渠道配置的编码类型预估token数（路由时请求上下文中还没有编码类型）
+     */
+    public int estimate(Object request, ChannelDB channel) {
+        if(!enabled || !(request instanceof CompletionRequest)) {
+            return 0;
+        }
+        return estimate(request, encodingType(channel.getChannelInfo()));
+    }
+
+    private static String encodingType(String channelInfo) {
+        if(StringUtils.isBlank(channelInfo)) {
+            return null;
+        }
+        try {
+            return JacksonUtils.MAPPER.readTree(channelInfo).path("encodingType").asText(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 预估请求消耗的token数：输入文本的token数 + max_tokens，图片等非文本内容不计入
+     */
+    public int estimate(Object request, String encodingType) {
+        if(!enabled || !(request instanceof CompletionRequest)) {
+            return 0;
+        }
+        CompletionRequest completionRequest = (CompletionRequest) request;
+        EncodingType encoding = EncodingType.fromName(encodingType).orElse(EncodingType.CL100K_BASE);
+        int tokens = 0;
+        if(completionRequest.getMessages() != null) {
+            for (Message message : completionRequest.getMessages()) {
+                if(message.getContent() instanceof String) {
+                    tokens += TokenCounter.tokenCount((String) message.getContent(), encoding);
+                } else if(message.getContent() instanceof List) {
+                    for (Object content : (List<?>) message.getContent()) {
+                        if(content instanceof Map && ((Map<?, ?>) content).get("text") instanceof String) {
+                            tokens += TokenCounter.tokenCount((String) ((Map<?, ?>) content).get("text"), encoding);
+                        }
+                    }
+                }
+            }
+        }
+        return tokens + (completionRequest.getMax_tokens() == null ? defaultMaxTokens : completionRequest.getMax_tokens());
+    }
+
+    /**
+     * 预占额度
+     *
+     * @return OK、APIKEY_EXHAUSTED或CHANNEL_EXHAUSTED
+     */
+    public int reserve(String akCode, String entityCode, String channelCode, int tokens) {
+        int akLimit = apikeyLimit(akCode, entityCode);
+        int channelLimit = channelTpm.getOrDefault(channelCode, 0);
+        if(tokens <= 0 || akLimit <= 0 && channelLimit <= 0) {
+            return OK;
+        }
+        long minute = currentMinute();
+        List<Object> keys = Lists.newArrayList(String.format(TPM_KEY_FORMAT, entityCode, akCode, minute),
+                String.format(CHANNEL_TPM_KEY_FORMAT, channelCode, minute));
+        try {
+            Object result = executor.execute("/tpm", ScriptType.limiter, keys, Lists.<Object>newArrayList(akLimit, channelLimit, tokens));
+            int code = result == null ? OK : Integer.parseInt(result.toString());
+            if(code == CHANNEL_EXHAUSTED) {
+                exhaustedChannels.put(channelCode, minute);
+            }
+            return code;
+        } catch (Exception e) {
+            LOGGER.warn("reserve tpm failed, " + e.getMessage(), e);
+            return OK;
+        }
+    }
+
+    public int apikeyLimit(String akCode, String entityCode) {
+        Integer apikeyLimit = apikeyTpm.get(akCode);
+        Integer modelLimit = modelTpm.get(entityCode);
+        if(apikeyLimit != null && modelLimit != null) {
+            return Math.min(apikeyLimit, modelLimit);
+        }
+        if(apikeyLimit != null) {
+            return apikeyLimit;
+        }
+        return modelLimit != null ? modelLimit : defaultTpm;
+    }
+
+    /**
+     * 按实际用量修正预占的额度，修正到请求所在的分钟窗口；同一key的修正量先在本地累加，通过一次流水线写入
+     */
+    public void reconcile(List<EndpointProcessData> processDataList) {
+        if(!enabled) {
+            return;
+        }
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        for (EndpointProcessData processData : processDataList) {
+            Integer reserved = processData.getReservedTokens();
+            if(reserved == null || processData.getChannelCode() == null) {
+                continue;
+            }
+            int actual = 0;
+            if(processData.getUsage() instanceof CompletionResponse.TokenUsage) {
+                actual = ((CompletionResponse.TokenUsage) processData.getUsage()).getTotal_tokens();
+            }
+            long delta = actual - reserved;
+            if(delta == 0) {
+                continue;
+            }
+            String entityCode = processData.getModel() != null ? processData.getModel() : processData.getEndpoint();
+            long minute = processData.getRequestTime() / 60;
+            deltas.merge(String.format(TPM_KEY_FORMAT, entityCode, processData.getAkCode(), minute), delta, Long::sum);
+            deltas.merge(String.format(CHANNEL_TPM_KEY_FORMAT, processData.getChannelCode(), minute), delta, Long::sum);
+        }
+        adjust(deltas);
+    }
+
+    /**
+     * 请求未被放行（如被其他限制拒绝）时归还预占的额度
+     */
+    public void cancel(String akCode, String entityCode, String channelCode, int tokens) {
+        if(!enabled || tokens <= 0) {
+            return;
+        }
+        long minute = currentMinute();
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        deltas.put(String.format(TPM_KEY_FORMAT, entityCode, akCode, minute), (long) -tokens);
+        deltas.put(String.format(CHANNEL_TPM_KEY_FORMAT, channelCode, minute), (long) -tokens);
+        adjust(deltas);
+    }
+
+    /**
+     * 失败转移或对冲切换渠道时，将渠道维度的预占额度转到新渠道（apikey维度不变），请求结束时按新渠道修正
+     */
+    public void transfer(EndpointProcessData processData, String channelCode) {
+        Integer reserved = processData.getReservedTokens();
+        String previous = processData.getChannelCode();
+        if(!enabled || reserved == null || reserved <= 0 || previous == null || previous.equals(channelCode)) {
+            return;
+        }
+        long minute = processData.getRequestTime() / 60;
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        deltas.put(String.format(CHANNEL_TPM_KEY_FORMAT, previous, minute), (long) -reserved);
+        deltas.put(String.format(CHANNEL_TPM_KEY_FORMAT, channelCode, minute), (long) reserved);
+        adjust(deltas);
+    }
+
+    private void adjust(Map<String, Long> deltas) {
+        if(deltas.isEmpty()) {
+            return;
+        }
+        RBatch batch = redisson.createBatch();
+        deltas.forEach((key, delta) -> {
+            if(delta != 0) {
+                batch.getAtomicLong(key).addAndGetAsync(delta);
+                batch.getAtomicLong(key).expireAsync(EXPIRY_SECONDS, TimeUnit.SECONDS);
+            }
+        });
+        try {
+            batch.execute();
+        } catch (Exception e) {
+            LOGGER.warn("adjust tpm failed, " + e.getMessage(), e);
+        }
+    }
+
+    private static long currentMinute() {
+        return DateTimeUtils.getCurrentSeconds() / 60;
+    }
+}
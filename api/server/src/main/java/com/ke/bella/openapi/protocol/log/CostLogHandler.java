@@ -16,18 +16,40 @@ import com.lmax.disruptor.EventHandler;
 
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * 计费处理器，可按akCode分片为多个消费者并行计算：每个分片只处理akCode哈希落在本分片的事件，
+ * 同一apikey的事件始终由同一线程按序累加
+ */
 @Slf4j
 public class CostLogHandler implements EventHandler<LogEvent> {
     public CostLogHandler(CostCounter costCounter, CostScripFetcher costScripFetcher) {
+        this(costCounter, costScripFetcher, 0, 1);
+    }
+
+    public CostLogHandler(CostCounter costCounter, CostScripFetcher costScripFetcher, int shard, int shardCount) {
         this.costCounter = costCounter;
         this.costScripFetcher = costScripFetcher;
+        this.shard = shard;
+        this.shardCount = shardCount;
     }
 
     private final CostCounter costCounter;
     private final CostScripFetcher costScripFetcher;
+    private final int shard;
+    private final int shardCount;
     @Override
     public void onEvent(LogEvent event, long sequence, boolean endOfBatch) throws Exception {
-        EndpointProcessData log = event.getData();
+        if(shardCount > 1 && shard(event.getData().getAkCode()) != shard) {
+            return;
+        }
+        try {
+            calculate(event.getData());
+        } finally {
+            costCounter.processed(event.getJournalOffset());
+        }
+    }
+
+    private void calculate(EndpointProcessData log) {
         BigDecimal cost = BigDecimal.ZERO;
         if(log.isInnerLog()) {
             if(log.getPriceInfo() == null) {
@@ -66,6 +88,10 @@ public class CostLogHandler implements EventHandler<LogEvent> {
         }
     }
 
+    private int shard(String akCode) {
+        return akCode == null ? 0 : Math.floorMod(akCode.hashCode(), shardCount);
+    }
+
     @FunctionalInterface
     public interface CostScripFetcher {
         String fetchCosetScript(String endpoint);
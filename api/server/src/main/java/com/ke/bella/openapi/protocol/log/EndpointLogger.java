@@ -1,43 +1,120 @@
 package com.ke.bella.openapi.protocol.log;
 
 import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.protocol.limiter.QuotaLimiter;
+import com.ke.bella.openapi.protocol.metrics.ChannelScoreboard;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import com.ke.bella.openapi.utils.StageMetrics;
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * 日志入队。队列满时按overflow-policy处理：
+ * block：等待至多block-timeout-millis后丢弃（为0时一直等待）；drop：直接丢弃；spill（默认）：写入本地溢出文件，稍后重放
+ */
 @Component
+@Slf4j
 public class EndpointLogger {
     @Autowired
     private RingBuffer<LogEvent> ringBuffer;
-    @Autowired
-    private List<EndpointLogHandler> logHandlers;
-    private Map<String, EndpointLogHandler> handlerMap;
     @Value("${openapi.log.repo:consoleLogRepo}")
     private String logRepo;
+    @Autowired
+    private LogSpillFile spillFile;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private ChannelScoreboard channelScoreboard;
+    @Autowired
+    private QuotaLimiter quotaLimiter;
+    @Value("${bella.openapi.log.overflow-policy:spill}")
+    private String overflowPolicy;
+    @Value("${bella.openapi.log.block-timeout-millis:0}")
+    private long blockTimeoutMillis;
     @PostConstruct
     public void init() {
-        handlerMap = new HashMap<>();
-        logHandlers.forEach(handler -> handlerMap.put(handler.endpoint(), handler));
+        if(!"block".equals(overflowPolicy) && !"drop".equals(overflowPolicy) && !"spill".equals(overflowPolicy)) {
+            throw new IllegalArgumentException("unknown log overflow policy: " + overflowPolicy);
+        }
     }
     public void log(EndpointProcessData log) {
+        //请求已结束，在入队前释放在途计数和并发配额，日志被丢弃时也不会泄漏
+        channelScoreboard.release(log);
+        quotaLimiter.release(log);
+        StageMetrics.run("log_enqueue", StageMetrics.tags(log), () -> doLog(log));
+    }
+
+    private void doLog(EndpointProcessData log) {
         log.setApikey(null);
         if(log.isMock()) {
             return;
         }
-        EndpointLogHandler handler = handlerMap.get(log.getEndpoint());
-        if(handler != null) {
-            handler.process(log);
+        //写入预写日志、用量统计等后处理都在消费线程中执行
+        long now = DateTimeUtils.getCurrentMills();
+        log.setLogMillis(now);
+        log.setLogTime(now / 1000);
+        Long sequence = claim();
+        if(sequence == null) {
+            LogEvent event = new LogEvent();
+            event.setData(log);
+            event.setRepositoryCode(logRepo);
+            overflow(event);
+            return;
         }
-        long sequence = ringBuffer.next();
         LogEvent event = ringBuffer.get(sequence);
         event.setData(log);
         event.setRepositoryCode(logRepo);
+        event.setJournalOffset(null);
         ringBuffer.publish(sequence);
     }
+
+    /**
+     * 申请队列位置，队列已满且按策略不再等待时返回null；只有block策略会等待
+     */
+    private Long claim() {
+        if(!"block".equals(overflowPolicy)) {
+            try {
+                return ringBuffer.tryNext();
+            } catch (InsufficientCapacityException e) {
+                return null;
+            }
+        }
+        if(blockTimeoutMillis <= 0) {
+            return ringBuffer.next();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        while (true) {
+            try {
+                return ringBuffer.tryNext();
+            } catch (InsufficientCapacityException e) {
+                if(deadline - System.nanoTime() <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+    }
+
+    private void overflow(LogEvent event) {
+        if("spill".equals(overflowPolicy)) {
+            try {
+                spillFile.append(event);
+                meterRegistry.counter("bella.log.overflow", "result", "spilled").increment();
+                return;
+            } catch (Exception e) {
+                LOGGER.warn("spill log event failed, " + e.getMessage(), e);
+            }
+        }
+        meterRegistry.counter("bella.log.overflow", "result", "dropped").increment();
+        LOGGER.warn("log ring buffer is full, drop log of request: {}", event.getData().getRequestId());
+    }
 }
@@ -0,0 +1,25 @@
+package com.ke.bella.openapi.protocol.log;
+
+import com.lmax.disruptor.EventHandler;
+
+/**
+ * 放在阶段的最后一个处理器之后，确认预写日志中的事件已完成该阶段；日志记录失败的事件不确认
+ */
+public class JournalAckHandler implements EventHandler<LogEvent> {
+    private final LogJournal journal;
+    private final String stage;
+
+    public JournalAckHandler(LogJournal journal, String stage) {
+        this.journal = journal;
+        this.stage = stage;
+    }
+
+    @Override
+    public void onEvent(LogEvent event, long sequence, boolean endOfBatch) {
+        if(event.isRecordFailed()) {
+            event.setRecordFailed(false);
+            return;
+        }
+        journal.ack(stage, event.getJournalOffset());
+    }
+}
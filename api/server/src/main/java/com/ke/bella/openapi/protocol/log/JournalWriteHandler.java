@@ -0,0 +1,22 @@
+package com.ke.bella.openapi.protocol.log;
+
+import com.lmax.disruptor.EventHandler;
+
+/**
+ * 队列的第一个阶段，将事件写入预写日志。单线程顺序写入，编码和分段切换不占用请求线程
+ */
+public class JournalWriteHandler implements EventHandler<LogEvent> {
+    private final LogJournal journal;
+
+    public JournalWriteHandler(LogJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public void onEvent(LogEvent event, long sequence, boolean endOfBatch) {
+        //重新发布的事件（如溢出文件重放）可能已写入
+        if(event.getJournalOffset() == null) {
+            event.setJournalOffset(journal.append(event));
+        }
+    }
+}
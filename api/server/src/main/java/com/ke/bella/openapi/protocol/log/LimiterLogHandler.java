@@ -2,23 +2,70 @@ package com.ke.bella.openapi.protocol.log;
 
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.protocol.limiter.LimiterManager;
+import com.ke.bella.openapi.protocol.limiter.TpmLimiter;
 import com.lmax.disruptor.EventHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 限流计数记录：一个Disruptor批次内的事件先缓存，在批次结束（endOfBatch）或达到最大批量时聚合后一次写入redis
+ */
 @Slf4j
 public class LimiterLogHandler implements EventHandler<LogEvent> {
-
+    private static final int MAX_BATCH_SIZE = 256;
     private final LimiterManager limiterManager;
+    private final TpmLimiter tpmLimiter;
+    //外部上报的非私有渠道请求，计入rpm和并发
+    private final List<EndpointProcessData> limited = new ArrayList<>();
+    //网关自身转发的请求，修正tpm预占额度
+    private final List<EndpointProcessData> inner = new ArrayList<>();
+    private final Counter eventCounter;
+    private final Timer flushTimer;
 
-    public LimiterLogHandler(LimiterManager limiterManager) {
+    public LimiterLogHandler(LimiterManager limiterManager, TpmLimiter tpmLimiter, MeterRegistry meterRegistry) {
         this.limiterManager = limiterManager;
+        this.tpmLimiter = tpmLimiter;
+        this.eventCounter = Counter.builder("bella.log.handler.events").tag("handler", "limiter").register(meterRegistry);
+        this.flushTimer = Timer.builder("bella.log.handler.flush").tag("handler", "limiter").register(meterRegistry);
     }
 
     @Override
     public void onEvent(LogEvent event, long sequence, boolean endOfBatch) throws Exception {
         EndpointProcessData log = event.getData();
         if(!log.isInnerLog() && !log.isPrivate()) {
-            limiterManager.record(log);
+            limited.add(log);
+        }
+        if(log.isInnerLog()) {
+            //并发配额在请求结束时已释放（EndpointLogger、OpenapiRequestFilter）
+            inner.add(log);
+        }
+        if(endOfBatch || limited.size() + inner.size() >= MAX_BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if(limited.isEmpty() && inner.isEmpty()) {
+            return;
+        }
+        Timer.Sample sample = Timer.start();
+        try {
+            if(!limited.isEmpty()) {
+                limiterManager.recordBatch(limited);
+            }
+            if(!inner.isEmpty()) {
+                tpmLimiter.reconcile(inner);
+            }
+            eventCounter.increment(limited.size() + inner.size());
+        } finally {
+            sample.stop(flushTimer);
+            limited.clear();
+            inner.clear();
         }
     }
 }
@@ -7,4 +7,8 @@ import lombok.Data;
 public class LogEvent {
     private EndpointProcessData data;
     private String repositoryCode;
+    //预写日志中的偏移量，未写入时为null
+    private Long journalOffset;
+    //日志记录失败，不确认记录阶段，由预写日志在重启后重放；JournalAckHandler读取后重置
+    private boolean recordFailed;
 }
@@ -0,0 +1,78 @@
+package com.ke.bella.openapi.protocol.log;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.protocol.OpenapiResponse;
+
+/**
+ * 日志事件的文本编码，用于写入本地文件后重放。request、response、usage字段声明为Object或父类，
+ * 编码时记录实际类型，解码时还原，保证计费等消费者拿到的对象类型与内存中一致。
+ * 不使用JacksonUtils的mapper，其将Long序列化为字符串，会改变metrics中数值的类型
+ */
+public class LogEventCodec {
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final String[] TYPED_FIELDS = {"request", "response", "usage"};
+    private static final String TYPE_SUFFIX = "@type";
+
+    private LogEventCodec() {
+    }
+
+    public static String encode(LogEvent event) {
+        EndpointProcessData data = event.getData();
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("repositoryCode", event.getRepositoryCode());
+        if(event.getJournalOffset() != null) {
+            node.put("journalOffset", event.getJournalOffset());
+        }
+        node.set("data", MAPPER.valueToTree(data));
+        putType(node, "request", data.getRequest());
+        putType(node, "response", data.getResponse());
+        putType(node, "usage", data.getUsage());
+        return node.toString();
+    }
+
+    public static LogEvent decode(String text) throws Exception {
+        JsonNode node = MAPPER.readTree(text);
+        JsonNode dataNode = node.get("data");
+        EndpointProcessData data = MAPPER.treeToValue(dataNode, EndpointProcessData.class);
+        for (String field : TYPED_FIELDS) {
+            JsonNode type = node.get(field + TYPE_SUFFIX);
+            JsonNode value = dataNode.get(field);
+            if(type == null || value == null || value.isNull()) {
+                continue;
+            }
+            Object typed = MAPPER.treeToValue(value, Class.forName(type.asText()));
+            switch (field) {
+            case "request":
+                data.setRequest(typed);
+                break;
+            case "response":
+                data.setResponse((OpenapiResponse) typed);
+                break;
+            default:
+                data.setUsage(typed);
+            }
+        }
+        LogEvent event = new LogEvent();
+        event.setData(data);
+        JsonNode repositoryCode = node.get("repositoryCode");
+        event.setRepositoryCode(repositoryCode == null || repositoryCode.isNull() ? null : repositoryCode.asText());
+        JsonNode journalOffset = node.get("journalOffset");
+        event.setJournalOffset(journalOffset == null || journalOffset.isNull() ? null : journalOffset.asLong());
+        return event;
+    }
+
+    private static void putType(ObjectNode node, String field, Object value) {
+        if(value != null) {
+            node.put(field + TYPE_SUFFIX, value.getClass().getName());
+        }
+    }
+}
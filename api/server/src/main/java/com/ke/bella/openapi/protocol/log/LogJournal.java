@@ -0,0 +1,339 @@
+package com.ke.bella.openapi.protocol.log;
+
+import com.ke.bella.openapi.utils.JacksonUtils;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.WorkHandler;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 日志事件的预写日志：事件入队后由Disruptor的第一个阶段（JournalWriteHandler，单线程）编码并追加到内存映射的分段文件中，
+ * 请求线程不做编码和写入。注意保护范围：只覆盖已写入预写日志的事件，仍在队列中未写入的事件、以及溢出文件缓冲区中
+ * 未刷出的事件在进程崩溃时会丢失（计费和日志记录都不会重放），队列积压越多丢失越多。各消费阶段（计费、日志记录）完成后确认，
+ * 并定期将未确认的事件（偏移量 -> requestId）和写入位置保存为检查点。进程异常退出后，启动时按检查点将未确认的事件
+ * 直接交给对应阶段的处理器重放，同一requestId只重放一次。所有阶段都已确认的分段文件会被删除。
+ * 计费阶段在CostCounter将费用写入数据库后才确认，并立即保存检查点；写库成功到检查点落盘之间退出仍可能重复计费。
+ * 内存映射的写入在进程被杀死后仍由操作系统落盘，但不保证宿主机掉电时不丢失。
+ * 默认关闭，开启时必须配置持久化的目录（容器中需挂载卷），否则Pod被驱逐后无法恢复
+ */
+@Component
+@Slf4j
+public class LogJournal {
+    public static final String STAGE_COST = "cost";
+    public static final String STAGE_RECORD = "record";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final int HEADER_SIZE = 4;
+    //默认关闭；开启后也只保护已写入的事件，见类注释
+    @Value("${bella.openapi.log.journal.enabled:false}")
+    private boolean enabled;
+    @Value("${bella.openapi.log.journal.dir:}")
+    private String journalDir;
+    @Value("${bella.openapi.log.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+    private Path dir;
+    private long segmentSize;
+    //分段起始偏移量 -> 分段文件
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private MappedByteBuffer current;
+    private long currentBase;
+    private volatile long tail;
+    //阶段 -> 未确认的事件（偏移量 -> requestId）
+    private final Map<String, ConcurrentSkipListMap<Long, String>> pending = new HashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if(!enabled) {
+            return;
+        }
+        if(StringUtils.isBlank(journalDir)) {
+            throw new IllegalArgumentException("bella.openapi.log.journal.dir is required when the log journal is enabled");
+        }
+        dir = Paths.get(journalDir);
+        Files.createDirectories(dir);
+        segmentSize = segmentSizeMb * 1024L * 1024L;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), path);
+            }
+        }
+        pending.put(STAGE_COST, new ConcurrentSkipListMap<>());
+        pending.put(STAGE_RECORD, new ConcurrentSkipListMap<>());
+        LOGGER.info("log journal enabled at {}, events still in the ring buffer or spill buffer are not journaled and are lost on crash", dir);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 追加事件，返回其偏移量；未开启或事件超过分段大小时返回null，此时事件不受日志保护。
+     * 由JournalWriteHandler在消费线程中调用，写满的分段在锁外落盘
+     */
+    public Long append(LogEvent event) {
+        if(!enabled) {
+            return null;
+        }
+        byte[] payload = LogEventCodec.encode(event).getBytes(StandardCharsets.UTF_8);
+        if(payload.length + HEADER_SIZE * 2 > segmentSize) {
+            LOGGER.warn("log event too large for journal, requestId: {}", event.getData().getRequestId());
+            return null;
+        }
+        long offset;
+        MappedByteBuffer full = null;
+        synchronized (this) {
+            try {
+                //分段末尾保留一个长度为0的头部作为结束标记
+                if(current == null || current.position() + payload.length + HEADER_SIZE * 2 > segmentSize) {
+                    full = current;
+                    rotate();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("rotate journal segment failed, " + e.getMessage(), e);
+                return null;
+            }
+            int position = current.position();
+            offset = currentBase + position;
+            //先写内容再写长度，保证读到的长度对应完整的记录
+            current.position(position + HEADER_SIZE);
+            current.put(payload);
+            current.putInt(position, payload.length);
+            //先登记再推进写入位置，检查点不会漏掉已写入的事件
+            String requestId = event.getData().getRequestId();
+            pending.values().forEach(stage -> stage.put(offset, requestId == null ? "" : requestId));
+            tail = currentBase + current.position();
+        }
+        if(full != null) {
+            full.force();
+        }
+        return offset;
+    }
+
+    /**
+     * 阶段处理完成。偏移量为null表示事件未写入日志
+     */
+    public void ack(String stage, Long offset) {
+        if(enabled && offset != null) {
+            pending.get(stage).remove(offset);
+        }
+    }
+
+    public void ack(String stage, Collection<Long> offsets) {
+        if(enabled) {
+            ConcurrentSkipListMap<Long, String> stagePending = pending.get(stage);
+            offsets.forEach(stagePending::remove);
+        }
+    }
+
+    /**
+     * 启动时、消费者启动前调用：按各阶段的检查点重放未确认的事件，事件先经过后处理，处理器异常时记录日志并继续。
+     * 重放的事件重新登记为未确认：日志记录阶段处理成功后立即确认；计费阶段的处理器只累加费用，
+     * 在CostCounter刷写成功后由FlushListener确认，刷写失败时仍保留在检查点中
+     */
+    public void recover(WorkHandler<LogEvent> processHandler, EventHandler<LogEvent> costHandler, EventHandler<LogEvent> recordHandler) {
+        if(!enabled || segments.isEmpty()) {
+            return;
+        }
+        Map<String, EventHandler<LogEvent>> handlers = new HashMap<>();
+        handlers.put(STAGE_COST, costHandler);
+        handlers.put(STAGE_RECORD, recordHandler);
+        Map<String, Checkpoint> checkpoints = new HashMap<>();
+        Map<String, Set<String>> replayed = new HashMap<>();
+        for (String stage : handlers.keySet()) {
+            checkpoints.put(stage, readCheckpoint(stage));
+            replayed.put(stage, new HashSet<>());
+        }
+        long recovered = 0;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            try (RandomAccessFile file = new RandomAccessFile(segment.getValue().toFile(), "r")) {
+                MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                while (buffer.remaining() >= HEADER_SIZE) {
+                    long offset = segment.getKey() + buffer.position();
+                    int length = buffer.getInt();
+                    if(length <= 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    buffer.get(payload);
+                    LogEvent event = null;
+                    for (Map.Entry<String, EventHandler<LogEvent>> handler : handlers.entrySet()) {
+                        String stage = handler.getKey();
+                        if(!checkpoints.get(stage).needsReplay(offset)) {
+                            continue;
+                        }
+                        if(event == null) {
+                            event = decode(payload);
+                            if(event == null) {
+                                break;
+                            }
+                            event.setJournalOffset(offset);
+                            try {
+                                processHandler.onEvent(event);
+                            } catch (Exception e) {
+                                LOGGER.warn("process journal event failed, " + e.getMessage(), e);
+                            }
+                        }
+                        String requestId = event.getData().getRequestId();
+                        if(requestId != null && !replayed.get(stage).add(requestId)) {
+                            continue;
+                        }
+                        pending.get(stage).put(offset, requestId == null ? "" : requestId);
+                        boolean success = false;
+                        try {
+                            //逐条处理，不在处理器中缓存
+                            handler.getValue().onEvent(event, -1, true);
+                            success = true;
+                        } catch (Exception e) {
+                            LOGGER.warn("replay journal failed, stage: " + stage + ", requestId: " + requestId + ", " + e.getMessage(), e);
+                        }
+                        if(event.isRecordFailed()) {
+                            //日志记录仍失败时保留为未确认，下次重启再重放
+                            event.setRecordFailed(false);
+                        } else if(success && STAGE_RECORD.equals(stage)) {
+                            pending.get(stage).remove(offset);
+                        }
+                    }
+                    if(event != null) {
+                        recovered++;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("read journal segment failed, " + segment.getValue() + ", " + e.getMessage(), e);
+            }
+        }
+        LOGGER.info("recovered {} log events from journal", recovered);
+        //重放完成后旧分段不再需要，新事件写入新分段
+        tail = segments.lastKey() + segmentSize;
+        checkpoint(STAGE_RECORD);
+    }
+
+    /**
+     * 保存阶段的检查点
+     */
+    public void checkpoint(String stage) {
+        if(!enabled) {
+            return;
+        }
+        Checkpoint checkpoint = new Checkpoint();
+        //先取写入位置再取未确认事件，保证写入位置之前的未确认事件都被记录
+        checkpoint.setTail(tail);
+        checkpoint.setPending(new HashMap<>(pending.get(stage)));
+        Path file = dir.resolve(stage + CHECKPOINT_SUFFIX);
+        Path temp = dir.resolve(stage + CHECKPOINT_SUFFIX + ".tmp");
+        try {
+            Files.write(temp, JacksonUtils.toByte(checkpoint));
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("write journal checkpoint failed, stage: " + stage + ", " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 定期保存日志记录阶段的检查点（计费阶段在刷写费用后保存），并删除所有阶段都已确认的分段
+     */
+    @Scheduled(fixedDelayString = "${bella.openapi.log.journal.checkpoint-interval-millis:1000}")
+    public void maintain() {
+        if(!enabled) {
+            return;
+        }
+        checkpoint(STAGE_RECORD);
+        long low = tail;
+        for (ConcurrentSkipListMap<Long, String> stagePending : pending.values()) {
+            Map.Entry<Long, String> first = stagePending.firstEntry();
+            if(first != null) {
+                low = Math.min(low, first.getKey());
+            }
+        }
+        synchronized (this) {
+            while (!segments.isEmpty() && (current == null || segments.firstKey() != currentBase) && segments.firstKey() + segmentSize <= low) {
+                Path path = segments.pollFirstEntry().getValue();
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    LOGGER.warn("delete journal segment failed, " + path + ", " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if(current != null) {
+            current.force();
+        }
+    }
+
+    private void rotate() throws IOException {
+        long base = segments.isEmpty() ? 0 : segments.lastKey() + segmentSize;
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentSize);
+            current = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        currentBase = base;
+        segments.put(base, path);
+    }
+
+    private Checkpoint readCheckpoint(String stage) {
+        Path file = dir.resolve(stage + CHECKPOINT_SUFFIX);
+        if(Files.exists(file)) {
+            try {
+                Checkpoint checkpoint = JacksonUtils.deserialize(Files.readAllBytes(file), Checkpoint.class);
+                if(checkpoint != null) {
+                    return checkpoint;
+                }
+            } catch (IOException e) {
+                LOGGER.warn("read journal checkpoint failed, stage: " + stage + ", " + e.getMessage(), e);
+            }
+        }
+        //没有检查点时重放全部事件
+        return new Checkpoint();
+    }
+
+    private static LogEvent decode(byte[] payload) {
+        try {
+            return LogEventCodec.decode(new String(payload, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            LOGGER.warn("decode journal event failed, " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Data
+    public static class Checkpoint {
+        //检查点时的写入位置，之后写入的事件都需要重放
+        private long tail;
+        //检查点时未确认的事件
+        private Map<Long, String> pending = new HashMap<>();
+
+        boolean needsReplay(long offset) {
+            return offset >= tail || pending.containsKey(offset);
+        }
+    }
+}
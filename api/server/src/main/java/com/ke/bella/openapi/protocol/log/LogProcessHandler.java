@@ -0,0 +1,42 @@
+package com.ke.bella.openapi.protocol.log;
+
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.utils.StageMetrics;
+import com.lmax.disruptor.WorkHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 日志后处理（用量统计、token计数、指标计算），作为Disruptor的第一个阶段由多个worker并行执行，
+ * 计费、日志记录、指标和限流阶段在其之后。耗时记录为log_process阶段
+ */
+@Slf4j
+public class LogProcessHandler implements WorkHandler<LogEvent> {
+    private final Map<String, EndpointLogHandler> handlerMap = new HashMap<>();
+
+    public LogProcessHandler(List<EndpointLogHandler> logHandlers) {
+        logHandlers.forEach(handler -> handlerMap.put(handler.endpoint(), handler));
+    }
+
+    @Override
+    public void onEvent(LogEvent event) {
+        EndpointProcessData log = event.getData();
+        EndpointLogHandler handler = handlerMap.get(log.getEndpoint());
+        if(handler == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            handler.process(log);
+            success = true;
+        } catch (Exception e) {
+            LOGGER.warn("process log failed, endpoint: " + log.getEndpoint() + ", requestId: " + log.getRequestId() + ", " + e.getMessage(), e);
+        } finally {
+            StageMetrics.record("log_process", StageMetrics.tags(log), System.nanoTime() - start, success);
+        }
+    }
+}
@@ -3,23 +3,72 @@ package com.ke.bella.openapi.protocol.log;
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.db.log.LogRepo;
 import com.lmax.disruptor.EventHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * 日志记录：一个Disruptor批次内的事件先缓存，在批次结束（endOfBatch）或达到最大批量时批量写入各LogRepo，
+ * 单个LogRepo失败不影响其他LogRepo。任一LogRepo失败时整批事件标记为recordFailed，记录阶段不确认，
+ * 由预写日志在重启后重放（写入成功的LogRepo可能重复记录）
+ */
 @Slf4j
 public class LogRecordHandler implements EventHandler<LogEvent> {
+    private static final int MAX_BATCH_SIZE = 256;
     private final List<LogRepo> logRepos;
+    private final List<EndpointProcessData> buffer = new ArrayList<>();
+    private final List<LogEvent> events = new ArrayList<>();
+    private final Counter eventCounter;
+    private final Counter failedCounter;
+    private final Timer flushTimer;
 
-    public LogRecordHandler(List<LogRepo> logRepos) {
+    public LogRecordHandler(List<LogRepo> logRepos, MeterRegistry meterRegistry) {
         this.logRepos = logRepos;
+        this.eventCounter = Counter.builder("bella.log.handler.events").tag("handler", "record").register(meterRegistry);
+        this.flushTimer = Timer.builder("bella.log.handler.flush").tag("handler", "record").register(meterRegistry);
+        this.failedCounter = Counter.builder("bella.log.handler.failed").tag("handler", "record").register(meterRegistry);
     }
 
     @Override
     public void onEvent(LogEvent event, long sequence, boolean endOfBatch) throws Exception {
-        logRepos.forEach(logRepo -> logRepo.record(event.getData()));
+        buffer.add(event.getData());
+        events.add(event);
+        if(endOfBatch || buffer.size() >= MAX_BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if(buffer.isEmpty()) {
+            return;
+        }
+        Timer.Sample sample = Timer.start();
+        boolean failed = false;
+        try {
+            for (LogRepo logRepo : logRepos) {
+                try {
+                    logRepo.recordBatch(buffer);
+                } catch (Exception e) {
+                    failed = true;
+                    LOGGER.warn("record log failed, repo: " + logRepo.getClass().getSimpleName() + ", " + e.getMessage(), e);
+                }
+            }
+            eventCounter.increment(buffer.size());
+            if(failed) {
+                failedCounter.increment(buffer.size());
+                events.forEach(event -> event.setRecordFailed(true));
+            }
+        } finally {
+            sample.stop(flushTimer);
+            buffer.clear();
+            events.clear();
+        }
     }
 
     @Data
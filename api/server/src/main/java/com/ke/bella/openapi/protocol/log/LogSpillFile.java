@@ -0,0 +1,177 @@
+package com.ke.bella.openapi.protocol.log;
+
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 日志队列满时的本地溢出文件：事件按行追加写入，消费者追上后（队列剩余容量过半）由后台线程读出并重新发布到队列。
+ * 重放前先将文件改名，重放过程中新的溢出写入新文件；重放在调度线程中执行，队列再次写满时不阻塞等待，
+ * 记录已重放的行数，剩余部分留到下一次；重放中途进程退出时，下次启动会重新重放整个文件。
+ * 溢出的事件在重新发布后才写入预写日志，因此遗留文件始终保留并重放。
+ * 事件在锁外编码，锁内只写入缓冲区，由后台线程按spill-flush-interval-millis定期刷出，进程崩溃时可能丢失最近一个间隔内的溢出事件
+ */
+@Component
+@Slf4j
+public class LogSpillFile {
+    private static final String SPILL_FILE = "log-spill.jsonl";
+    private static final String REPLAY_FILE = "log-spill.replaying.jsonl";
+    @Autowired
+    private RingBuffer<LogEvent> ringBuffer;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${bella.openapi.log.spill-dir:${java.io.tmpdir}/bella-openapi-log}")
+    private String spillDir;
+    private Path spillPath;
+    private Path replayPath;
+    private BufferedWriter writer;
+    private volatile long spilled;
+    //重放文件中已重新发布的行数，只在调度线程中访问
+    private long replayedLines;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path dir = Paths.get(spillDir);
+        Files.createDirectories(dir);
+        spillPath = dir.resolve(SPILL_FILE);
+        replayPath = dir.resolve(REPLAY_FILE);
+        Gauge.builder("bella.log.spill.pending", this, LogSpillFile::pending).register(meterRegistry);
+    }
+
+    public void append(LogEvent event) throws IOException {
+        String line = LogEventCodec.encode(event);
+        synchronized (this) {
+            if(writer == null) {
+                writer = Files.newBufferedWriter(spillPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(line);
+            writer.newLine();
+            spilled++;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bella.openapi.log.spill-flush-interval-millis:200}")
+    public synchronized void flush() {
+        if(writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            LOGGER.warn("flush spill file failed, " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 未重放的溢出事件数（仅统计本进程写入的）
+     */
+    public long pending() {
+        return spilled;
+    }
+
+    @Scheduled(fixedDelayString = "${bella.openapi.log.spill-replay-interval-millis:1000}")
+    public void replay() {
+        if(!Files.exists(replayPath)) {
+            if(ringBuffer.remainingCapacity() < ringBuffer.getBufferSize() / 2 || !rotate()) {
+                return;
+            }
+        }
+        long replayed = 0;
+        long lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(replayPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if(++lineNumber <= replayedLines || line.isEmpty()) {
+                    continue;
+                }
+                LogEvent spilledEvent;
+                try {
+                    spilledEvent = LogEventCodec.decode(line);
+                } catch (Exception e) {
+                    LOGGER.warn("decode spilled log event failed, " + e.getMessage(), e);
+                    continue;
+                }
+                long sequence;
+                try {
+                    sequence = ringBuffer.tryNext();
+                } catch (InsufficientCapacityException e) {
+                    //队列已满，不阻塞调度线程，从本行开始留到下一次重放
+                    replayedLines = lineNumber - 1;
+                    finishReplay(replayed);
+                    return;
+                }
+                LogEvent event = ringBuffer.get(sequence);
+                event.setData(spilledEvent.getData());
+                event.setRepositoryCode(spilledEvent.getRepositoryCode());
+                event.setJournalOffset(spilledEvent.getJournalOffset());
+                ringBuffer.publish(sequence);
+                replayed++;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("replay spilled log events failed, " + e.getMessage(), e);
+            replayedLines = Math.max(replayedLines, lineNumber);
+            finishReplay(replayed);
+            return;
+        }
+        try {
+            Files.delete(replayPath);
+            replayedLines = 0;
+        } catch (IOException e) {
+            LOGGER.warn("delete replayed spill file failed, " + e.getMessage(), e);
+            replayedLines = lineNumber;
+        }
+        finishReplay(replayed);
+    }
+
+    private void finishReplay(long replayed) {
+        if(replayed == 0) {
+            return;
+        }
+        spilled = Math.max(0, spilled - replayed);
+        meterRegistry.counter("bella.log.overflow", "result", "replayed").increment(replayed);
+        LOGGER.info("replayed {} spilled log events", replayed);
+    }
+
+    private synchronized boolean rotate() {
+        if(!Files.exists(spillPath)) {
+            return false;
+        }
+        try {
+            if(writer != null) {
+                writer.close();
+                writer = null;
+            }
+            Files.move(spillPath, replayPath, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("rotate spill file failed, " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if(writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -3,24 +3,54 @@ package com.ke.bella.openapi.protocol.log;
 import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.protocol.metrics.MetricsManager;
 import com.lmax.disruptor.EventHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 渠道指标记录：一个Disruptor批次内的事件先缓存，在批次结束（endOfBatch）或达到最大批量时一次写入redis
+ */
 @Slf4j
 public class MetricsLogHandler implements EventHandler<LogEvent> {
-
+    private static final int MAX_BATCH_SIZE = 256;
     private final MetricsManager metricsManager;
+    private final List<EndpointProcessData> buffer = new ArrayList<>();
+    private final Counter eventCounter;
+    private final Timer flushTimer;
 
-    public MetricsLogHandler(MetricsManager metricsManager) {
+    public MetricsLogHandler(MetricsManager metricsManager, MeterRegistry meterRegistry) {
         this.metricsManager = metricsManager;
+        this.eventCounter = Counter.builder("bella.log.handler.events").tag("handler", "metrics").register(meterRegistry);
+        this.flushTimer = Timer.builder("bella.log.handler.flush").tag("handler", "metrics").register(meterRegistry);
     }
 
     @Override
     public void onEvent(LogEvent event, long sequence, boolean endOfBatch) throws Exception {
         EndpointProcessData log = event.getData();
-        if(!log.isInnerLog()) {
+        if(log.isInnerLog()) {
+            buffer.add(log);
+        }
+        if(endOfBatch || buffer.size() >= MAX_BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() throws Exception {
+        if(buffer.isEmpty()) {
             return;
         }
-        metricsManager.record(log);
+        Timer.Sample sample = Timer.start();
+        try {
+            metricsManager.recordBatch(buffer);
+            eventCounter.increment(buffer.size());
+        } finally {
+            sample.stop(flushTimer);
+            buffer.clear();
+        }
     }
 
 }
@@ -0,0 +1,190 @@
+package com.ke.bella.openapi.protocol.metrics;
+
+import com.google.common.collect.Lists;
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 渠道延迟分布（首包耗时ttft、请求开始到结束的耗时latency，单位均为ms）：各节点用HdrHistogram记录本地分布，按时间片压缩后写入redis，
+ * 查询时合并所有节点最近一分钟的分布计算分位数。同时导出到Prometheus：默认只导出次数、总和与最大值，
+ * 开启publish-histogram后导出直方图桶以便跨节点聚合分位数（每个渠道×指标可达数百个序列，渠道较多时注意基数）。
+ * 渠道只属于一个能力点，指标不再按能力点打标签。各能力点上报的ttlt单位不一致（s或ms），不使用ttlt，按requestMillis重新计算
+ */
+@Component
+@Slf4j
+public class ChannelLatencyHistograms {
+    public static final String LATENCY = "latency";
+    public static final List<String> LATENCY_METRICS = Lists.newArrayList("ttft", LATENCY);
+    private static final String HISTOGRAM_KEY_FORMAT = "bella-openapi-channel-metrics:%s:histogram:%s:%s";
+    private static final double[] PERCENTILES = {50, 95, 99};
+    private static final int WINDOW_SIZE = 60;
+    private static final int SLOT_SECONDS = 10;
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private final String nodeId = UUID.randomUUID().toString();
+    @Autowired
+    private RedissonClient redisson;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${bella.openapi.metrics.histogram.enabled:true}")
+    private boolean enabled;
+    @Value("${bella.openapi.metrics.histogram.publish-histogram:false}")
+    private boolean publishHistogram;
+    //渠道:指标 -> 本地记录器
+    private final ConcurrentHashMap<String, Recorder> recorders = new ConcurrentHashMap<>();
+    //渠道:指标 -> 导出的分布
+    private final ConcurrentHashMap<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    /**
+     * 记录成功请求的延迟，ttft为0表示非流式请求，不计入
+     */
+    public void record(String channelCode, EndpointProcessData processData) {
+        if(!enabled) {
+            return;
+        }
+        Map<String, Object> metrics = processData.getMetrics();
+        Object ttft = metrics == null ? null : metrics.get("ttft");
+        if(ttft instanceof Number && ((Number) ttft).longValue() > 0) {
+            record(channelCode, "ttft", ((Number) ttft).longValue());
+        }
+        long latency = ChannelScoreboard.latencyMillis(processData);
+        if(latency >= 0) {
+            record(channelCode, LATENCY, latency);
+        }
+    }
+
+    private void record(String channelCode, String name, long latency) {
+        String key = channelCode + ":" + name;
+        recorders.computeIfAbsent(key, k -> new Recorder(SIGNIFICANT_DIGITS)).recordValue(latency);
+        summaries.computeIfAbsent(key, k -> DistributionSummary.builder("bella.channel.latency")
+                .tag("channel", channelCode)
+                .tag("metric", name)
+                .publishPercentileHistogram(publishHistogram)
+                .register(meterRegistry))
+                .record(latency);
+    }
+
+    /**
+     * 将本地上一个周期的分布写入所在时间片，每次写入一个field，查询时全部合并
+     */
+    @Scheduled(fixedRate = SLOT_SECONDS * 1000)
+    public void flush() {
+        if(!enabled || recorders.isEmpty()) {
+            return;
+        }
+        long slot = slot(DateTimeUtils.getCurrentSeconds());
+        try {
+            RBatch batch = redisson.createBatch();
+            boolean pending = false;
+            for (Map.Entry<String, Recorder> entry : recorders.entrySet()) {
+                Histogram histogram = entry.getValue().getIntervalHistogram();
+                if(histogram.getTotalCount() == 0) {
+                    continue;
+                }
+                String[] channelAndMetric = entry.getKey().split(":(?=[^:]+$)");
+                RMapAsync<String, String> map = batch.getMap(String.format(HISTOGRAM_KEY_FORMAT, channelAndMetric[0], channelAndMetric[1], slot),
+                        StringCodec.INSTANCE);
+                map.fastPutAsync(nodeId + ":" + DateTimeUtils.getCurrentMills(), encode(histogram));
+                map.expireAsync(WINDOW_SIZE * 2, TimeUnit.SECONDS);
+                pending = true;
+            }
+            if(pending) {
+                batch.execute();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("flush latency histograms failed, " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 合并所有节点最近一分钟（包含当前时间片在内的6个时间片）的分布，返回渠道 -> {ttft_p50: .., latency_p95: .., ...}，
+     * 能力点上报ttft时查询ttft，latency总是查询
+     */
+    public Map<String, Map<String, Object>> percentiles(Collection<String> channelCodes, Collection<String> metricsName) {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        if(metricsName.contains("ttft")) {
+            names.add("ttft");
+        }
+        names.add(LATENCY);
+        if(!enabled || channelCodes.isEmpty() || names.isEmpty()) {
+            return result;
+        }
+        long current = slot(DateTimeUtils.getCurrentSeconds());
+        long first = current - WINDOW_SIZE + SLOT_SECONDS;
+        List<String> channels = new ArrayList<>(channelCodes);
+        RBatch batch = redisson.createBatch();
+        for (String channelCode : channels) {
+            for (String name : names) {
+                for (long slot = first; slot <= current; slot += SLOT_SECONDS) {
+                    batch.getMap(String.format(HISTOGRAM_KEY_FORMAT, channelCode, name, slot), StringCodec.INSTANCE).readAllValuesAsync();
+                }
+            }
+        }
+        List<?> responses = batch.execute().getResponses();
+        int index = 0;
+        for (String channelCode : channels) {
+            for (String name : names) {
+                Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+                for (long slot = first; slot <= current; slot += SLOT_SECONDS) {
+                    Object values = responses.get(index++);
+                    if(values instanceof Collection) {
+                        for (Object value : (Collection<?>) values) {
+                            merge(merged, value.toString());
+                        }
+                    }
+                }
+                if(merged.getTotalCount() == 0) {
+                    continue;
+                }
+                Map<String, Object> channelPercentiles = result.computeIfAbsent(channelCode, k -> new HashMap<>());
+                for (double percentile : PERCENTILES) {
+                    channelPercentiles.put(name + "_p" + (int) percentile, merged.getValueAtPercentile(percentile));
+                }
+            }
+        }
+        return result;
+    }
+
+    private long slot(long seconds) {
+        return seconds - seconds % SLOT_SECONDS;
+    }
+
+    private static String encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+    }
+
+    private static void merge(Histogram merged, String encoded) {
+        try {
+            merged.add(Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)), 0));
+        } catch (Exception e) {
+            LOGGER.warn("decode latency histogram failed, " + e.getMessage());
+        }
+    }
+}
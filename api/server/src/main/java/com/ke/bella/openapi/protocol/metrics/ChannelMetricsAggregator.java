@@ -0,0 +1,227 @@
+package com.ke.bella.openapi.protocol.metrics;
+
+import com.google.common.collect.Lists;
+import com.ke.bella.openapi.script.LuaScriptExecutor;
+import com.ke.bella.openapi.script.ScriptType;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 渠道指标的秒级聚合：请求结束时只在本地累加计数和指标值，每秒按能力点+渠道调用一次metrics脚本写入累计值，
+ * redis中的key结构不变（:total、:unavailable等），指标查询不受影响。
+ * 渠道在一秒内第一次出现429时立即单独写入，保证不可用标记不会因聚合而延迟
+ */
+@Component
+@Slf4j
+public class ChannelMetricsAggregator {
+    static final int MIN_COMPLETED_THRESHOLD = 10;
+    static final int ERROR_RATE_THRESHOLD = 30;//百分比
+    @Autowired
+    private LuaScriptExecutor executor;
+    @Autowired
+    private RedissonClient redisson;
+    @Autowired
+    private UnavailableChannelSnapshot unavailableChannelSnapshot;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${bella.openapi.metrics.aggregate.enabled:true}")
+    private boolean enabled;
+    //秒:能力点:渠道 -> 当前秒的累计值
+    private final ConcurrentHashMap<CellKey, Cell> cells = new ConcurrentHashMap<>();
+    //能力点:渠道 -> 最近一次立即写入429的秒
+    private final ConcurrentHashMap<String, Long> lastRateLimited = new ConcurrentHashMap<>();
+    private Timer flushTimer;
+
+    @PostConstruct
+    public void init() {
+        flushTimer = Timer.builder("bella.metrics.aggregate.flush").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void add(String endpoint, String channelCode, int httpCode, int unavailableSeconds, Collection<String> metricsName,
+            Map<String, Object> metrics) {
+        long second = DateTimeUtils.getCurrentSeconds();
+        if(httpCode == 429 && rateLimitedFirstTime(endpoint + ":" + channelCode, second)) {
+            flushRateLimited(endpoint, channelCode, unavailableSeconds, second, metricsName, metrics);
+            return;
+        }
+        //在compute中累加：flush的remove与累加互斥，移除后的Cell不会再被写入
+        cells.compute(new CellKey(second, endpoint, channelCode), (k, cell) -> {
+            if(cell == null) {
+                cell = new Cell();
+            }
+            cell.add(httpCode, unavailableSeconds, metricsName, metrics);
+            return cell;
+        });
+    }
+
+    /**
+     * 写入已结束的秒的累计值；正在累加的当前秒留到下一次
+     */
+    @Scheduled(fixedRateString = "${bella.openapi.metrics.aggregate.flush-interval-millis:1000}")
+    public void flush() {
+        if(!enabled) {
+            return;
+        }
+        flush(DateTimeUtils.getCurrentSeconds());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush(Long.MAX_VALUE);
+    }
+
+    private void flush(long beforeSecond) {
+        if(cells.isEmpty()) {
+            return;
+        }
+        Timer.Sample sample = Timer.start();
+        try {
+            RBatch batch = redisson.createBatch();
+            boolean pending = false;
+            for (CellKey key : new ArrayList<>(cells.keySet())) {
+                if(key.second >= beforeSecond) {
+                    continue;
+                }
+                Cell cell = cells.remove(key);
+                if(cell != null) {
+                    executor.execute(batch, key.endpoint, ScriptType.metrics, Lists.newArrayList(key.channelCode), cell.toParams(key.second));
+                    pending = true;
+                }
+            }
+            if(pending) {
+                batch.execute();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("flush channel metrics failed, " + e.getMessage(), e);
+        } finally {
+            sample.stop(flushTimer);
+        }
+        long expired = DateTimeUtils.getCurrentSeconds() - 60;
+        lastRateLimited.values().removeIf(second -> second < expired);
+    }
+
+    private boolean rateLimitedFirstTime(String key, long second) {
+        Long previous = lastRateLimited.put(key, second);
+        return previous == null || previous != second;
+    }
+
+    private void flushRateLimited(String endpoint, String channelCode, int unavailableSeconds, long second, Collection<String> metricsName,
+            Map<String, Object> metrics) {
+        if(unavailableSeconds > 0) {
+            //本节点立即生效，其他节点通过脚本的pub/sub通知
+            unavailableChannelSnapshot.markUnavailable(channelCode, unavailableSeconds);
+        }
+        Cell cell = new Cell();
+        cell.add(429, unavailableSeconds, metricsName, metrics);
+        try {
+            executor.execute(endpoint, ScriptType.metrics, Lists.newArrayList(channelCode), cell.toParams(second));
+        } catch (Exception e) {
+            LOGGER.warn("record rate limited channel metrics failed, " + e.getMessage(), e);
+        }
+    }
+
+    private static class CellKey {
+        private final long second;
+        private final String endpoint;
+        private final String channelCode;
+
+        CellKey(long second, String endpoint, String channelCode) {
+            this.second = second;
+            this.endpoint = endpoint;
+            this.channelCode = channelCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof CellKey)) {
+                return false;
+            }
+            CellKey other = (CellKey) o;
+            return second == other.second && endpoint.equals(other.endpoint) && channelCode.equals(other.channelCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(second) * 31 + endpoint.hashCode()) * 31 + channelCode.hashCode();
+        }
+    }
+
+    /**
+     * 一个渠道在一段时间内的累计指标。httpCode由计数推导：出现过429时按429处理，否则有5xx时按500处理，不可用时长取最大值
+     */
+    static class Cell {
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder requestTooMany = new LongAdder();
+        private final LongAccumulator unavailableSeconds = new LongAccumulator(Math::max, 0);
+        private final ConcurrentHashMap<String, DoubleAdder> metrics = new ConcurrentHashMap<>();
+
+        void add(int httpCode, int unavailableSeconds, Collection<String> metricsName, Map<String, Object> processDataMetrics) {
+            this.unavailableSeconds.accumulate(unavailableSeconds);
+            if(httpCode >= 500) {
+                errors.increment();
+            }
+            if(httpCode == 429) {
+                requestTooMany.increment();
+            }
+            completed.increment();
+            if(processDataMetrics == null) {
+                return;
+            }
+            metricsName.forEach(name -> {
+                Object value = processDataMetrics.get(name);
+                if(value instanceof Number) {
+                    metrics.computeIfAbsent(name, k -> new DoubleAdder()).add(((Number) value).doubleValue());
+                }
+            });
+        }
+
+        List<Object> toParams(long second) {
+            List<Object> params = new ArrayList<>();
+            params.add(MIN_COMPLETED_THRESHOLD);
+            params.add(ERROR_RATE_THRESHOLD);
+            params.add(requestTooMany.sum() > 0 ? 429 : errors.sum() > 0 ? 500 : 200);
+            params.add(unavailableSeconds.get());
+            params.add(second);
+            params.add("errors");
+            params.add(errors.sum());
+            params.add("request_too_many");
+            params.add(requestTooMany.sum());
+            params.add("completed");
+            params.add(completed.sum());
+            metrics.forEach((name, value) -> {
+                double sum = value.sum();
+                params.add(name);
+                //脚本使用HINCRBY累加，整数指标按整数写入
+                params.add(sum == Math.rint(sum) ? (Object) (long) sum : (Object) sum);
+            });
+            return params;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.ke.bella.openapi.protocol.metrics;
+
+import com.ke.bella.openapi.EndpointProcessData;
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 节点本地的渠道评分：按时间衰减的指数移动平均（EWMA）统计延迟与错误率，并记录在途请求数，供路由加权选择使用。
+ * 在途计数绑定在请求的processData上，请求结束（日志入队或请求线程退出）时释放，重复释放无影响
+ */
+@Component
+public class ChannelScoreboard {
+    //单次采样的最小权重，避免短时间内的大量请求几乎不影响均值
+    private static final double MIN_SAMPLE_WEIGHT = 0.05;
+    private final ConcurrentHashMap<String, Score> scores = new ConcurrentHashMap<>();
+    @Value("${bella.openapi.route.score.decay-seconds:30}")
+    private int decaySeconds;
+    @Value("${bella.openapi.route.score.error-penalty:10}")
+    private double errorPenalty;
+    //等待在途计数释放的线程，有等待者时释放计数才通知
+    private final Object releaseSignal = new Object();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    public void acquire(String channelCode) {
+        getScore(channelCode).inflight.incrementAndGet();
+    }
+
+    /**
+     * 在途计数小于limit时占用，判断和占用是原子的
+     */
+    public boolean tryAcquire(String channelCode, int limit) {
+        AtomicInteger inflight = getScore(channelCode).inflight;
+        int current;
+        do {
+            current = inflight.get();
+            if(current >= limit) {
+                return false;
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * 占用渠道的在途计数并绑定到请求上，请求已绑定的其他渠道（如失败转移前的渠道）同时释放
+     */
+    public void acquire(EndpointProcessData processData, String channelCode) {
+        acquire(channelCode);
+        bind(processData, channelCode);
+    }
+
+    public boolean tryAcquire(EndpointProcessData processData, String channelCode, int limit) {
+        if(!tryAcquire(channelCode, limit)) {
+            return false;
+        }
+        bind(processData, channelCode);
+        return true;
+    }
+
+    /**
+     * 将已占用的在途计数（如胜出的对冲请求）绑定到请求上，释放请求原来绑定的渠道
+     */
+    public void bind(EndpointProcessData processData, String channelCode) {
+        String previous;
+        synchronized (processData) {
+            previous = processData.getInflightChannel();
+            processData.setInflightChannel(channelCode);
+        }
+        if(previous != null) {
+            release(previous);
+        }
+    }
+
+    /**
+     * 请求结束时释放绑定的在途计数，可重复调用
+     */
+    public void release(EndpointProcessData processData) {
+        if(processData != null) {
+            bind(processData, null);
+        }
+    }
+
+    /**
+     * 请求完成的日志处理时调用，只更新评分，在途计数由请求结束时释放
+     *
+     * @param channelCode 渠道
+     * @param httpCode    响应码
+     * @param processData 请求，延迟取首包耗时，没有首包时取请求开始到结束的耗时，单位均为ms
+     */
+    public void record(String channelCode, int httpCode, EndpointProcessData processData) {
+        Score score = getScore(channelCode);
+        double error = httpCode >= 500 || httpCode == 429 ? 1 : 0;
+        score.update(resolveLatency(processData), error, DateTimeUtils.getCurrentMills(), decaySeconds * 1000.0);
+    }
+
+    /**
+     * 请求开始到结束（日志入队）的耗时，单位ms；各能力点的ttlt单位不一致（s或ms），不能直接使用
+     */
+    public static long latencyMillis(EndpointProcessData processData) {
+        if(processData.getRequestMillis() <= 0 || processData.getLogMillis() < processData.getRequestMillis()) {
+            return -1;
+        }
+        return processData.getLogMillis() - processData.getRequestMillis();
+    }
+
+    /**
+     * 释放未绑定到请求上的在途计数（如落败的对冲请求），不更新评分
+     */
+    public void release(String channelCode) {
+        getScore(channelCode).inflight.updateAndGet(v -> v > 0 ? v - 1 : 0);
+        if(waiters.get() > 0) {
+            synchronized (releaseSignal) {
+                releaseSignal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 等待在途计数释放直到available成立，不轮询
+     *
+     * @return available成立返回true，超时或被中断返回false
+     */
+    public boolean awaitRelease(BooleanSupplier available, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        waiters.incrementAndGet();
+        try {
+            synchronized (releaseSignal) {
+                while (true) {
+                    if(available.getAsBoolean()) {
+                        return true;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if(remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(releaseSignal, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    public int inflight(String channelCode) {
+        Score score = scores.get(channelCode);
+        return score == null ? 0 : score.inflight.get();
+    }
+
+    /**
+     * 渠道的平滑延迟（ms），没有采样数据时返回NaN
+     */
+    public double latency(String channelCode) {
+        Score score = scores.get(channelCode);
+        return score == null ? Double.NaN : score.latency;
+    }
+
+    /**
+     * 计算渠道的选择权重，延迟越低、错误率越低权重越高；
+     * 长时间没有采样的渠道逐渐回归到默认延迟，保证被降权的渠道仍能得到探测流量
+     *
+     * @param channelCode    渠道
+     * @param defaultLatency 没有采样数据时使用的延迟（ms）
+     */
+    public double weight(String channelCode, double defaultLatency) {
+        Score score = scores.get(channelCode);
+        if(score == null || Double.isNaN(score.latency)) {
+            return 1.0 / Math.max(defaultLatency, 1.0);
+        }
+        long idle = DateTimeUtils.getCurrentMills() - score.lastUpdate;
+        double freshness = Math.exp(-idle / (decaySeconds * 1000.0));
+        double latency = freshness * score.latency + (1 - freshness) * defaultLatency;
+        double error = freshness * score.error;
+        return 1.0 / (Math.max(latency, 1.0) * (1 + errorPenalty * error));
+    }
+
+    private Score getScore(String channelCode) {
+        return scores.computeIfAbsent(channelCode, k -> new Score());
+    }
+
+    private static double resolveLatency(EndpointProcessData processData) {
+        Map<String, Object> metrics = processData.getMetrics();
+        double ttft = metrics == null ? -1 : toDouble(metrics.get("ttft"));
+        if(ttft > 0) {
+            return ttft;
+        }
+        long latency = latencyMillis(processData);
+        return latency >= 0 ? latency : Double.NaN;
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : -1;
+    }
+
+    private static class Score {
+        private final AtomicInteger inflight = new AtomicInteger();
+        private volatile double latency = Double.NaN;
+        private volatile double error;
+        private volatile long lastUpdate;
+
+        synchronized void update(double latencySample, double errorSample, long now, double tau) {
+            double alpha = lastUpdate == 0 ? 0 : Math.min(Math.exp(-(now - lastUpdate) / tau), 1 - MIN_SAMPLE_WEIGHT);
+            if(!Double.isNaN(latencySample)) {
+                latency = Double.isNaN(latency) ? latencySample : alpha * latency + (1 - alpha) * latencySample;
+            }
+            error = alpha * error + (1 - alpha) * errorSample;
+            lastUpdate = now;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.ke.bella.openapi.protocol.metrics;
+
+import com.ke.bella.openapi.utils.HttpUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * HttpUtils中各profile的client指标：创建的client数、连接池连接数、Dispatcher执行和排队的请求数。
+ * profile在首次使用时创建，定时检查并为新的profile注册指标
+ */
+@Component
+public class HttpClientMetrics {
+    private final Set<String> registered = ConcurrentHashMap.newKeySet();
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        HttpUtils.defaultOkhttpClient();
+        register();
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void register() {
+        for (String profile : HttpUtils.stats().keySet()) {
+            if(!registered.add(profile)) {
+                continue;
+            }
+            gauge("bella.http.client.created", profile, null, HttpUtils.ClientStats::getCreated);
+            gauge("bella.http.pool.connections", profile, "total", HttpUtils.ClientStats::getConnections);
+            gauge("bella.http.pool.connections", profile, "idle", HttpUtils.ClientStats::getIdleConnections);
+            gauge("bella.http.dispatcher.calls", profile, "running", HttpUtils.ClientStats::getRunningCalls);
+            gauge("bella.http.dispatcher.calls", profile, "queued", HttpUtils.ClientStats::getQueuedCalls);
+        }
+    }
+
+    private void gauge(String name, String profile, String state, ToDoubleFunction<HttpUtils.ClientStats> value) {
+        Gauge.Builder<String> builder = Gauge.builder(name, profile, p -> {
+            HttpUtils.ClientStats stats = HttpUtils.stats().get(p);
+            return stats == null ? 0 : value.applyAsDouble(stats);
+        }).tag("profile", profile);
+        if(state != null) {
+            builder.tag("state", state);
+        }
+        builder.register(meterRegistry);
+    }
+}
@@ -11,6 +11,7 @@ import com.ke.bella.openapi.utils.DateTimeUtils;
 import com.ke.bella.openapi.utils.JacksonUtils;
 import com.ke.bella.openapi.utils.MatchUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -18,6 +19,8 @@ import org.springframework.stereotype.Component;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,52 +36,71 @@ public class MetricsManager {
     private List<MetricsResolver> resolvers;
     @Autowired
     private RedissonClient redisson;
+    @Autowired
+    private ChannelScoreboard channelScoreboard;
+    @Autowired
+    private UnavailableChannelSnapshot unavailableChannelSnapshot;
+    @Autowired
+    private ChannelMetricsAggregator aggregator;
+    @Autowired
+    private ChannelLatencyHistograms latencyHistograms;
 
     public void record(EndpointProcessData processData) throws IOException {
-        String endpoint = processData.getEndpoint();
-        if(endpoint == null || processData.getChannelCode() == null) {
-            return;
+        recordBatch(Collections.singletonList(processData));
+    }
+
+    /**
+     * 批量记录一批请求的渠道指标：开启秒级聚合时只在本地累加，由聚合器每秒写入；
+     * 否则同一能力点、渠道的计数和指标值在本地累加后，每个渠道只调用一次脚本，所有脚本调用通过一次流水线发送
+     */
+    public void recordBatch(List<EndpointProcessData> processDataList) throws IOException {
+        Map<String, ChannelMetricsAggregator.Cell> cells = new LinkedHashMap<>();
+        for (EndpointProcessData processData : processDataList) {
+            String endpoint = processData.getEndpoint();
+            if(endpoint == null || processData.getChannelCode() == null) {
+                continue;
+            }
+            MetricsResolver resolver = resolvers.stream().filter(t -> MatchUtils.matchUrl(t.support(), endpoint))
+                    .findAny()
+                    .orElse(null);
+            int unavailableSeconds = resolver == null ? 0 : resolver.resolveUnavailableSeconds(processData);
+            Collection<String> metricsName;
+            if(resolver != null) {
+                metricsName = resolver.metricsName();
+            } else {
+                metricsName = processData.getMetrics().keySet();
+            }
+            OpenapiResponse response = processData.getResponse();
+            int httpCode = (response == null || response.getError() == null) ? 200 : response.getError().getHttpCode();
+            channelScoreboard.record(processData.getChannelCode(), httpCode, processData);
+            if(httpCode == 200) {
+                latencyHistograms.record(processData.getChannelCode(), processData);
+            }
+            if(aggregator.isEnabled()) {
+                aggregator.add(endpoint, processData.getChannelCode(), httpCode, unavailableSeconds, metricsName, processData.getMetrics());
+            } else {
+                cells.computeIfAbsent(endpoint + "\n" + processData.getChannelCode(), k -> new ChannelMetricsAggregator.Cell())
+                        .add(httpCode, unavailableSeconds, metricsName, processData.getMetrics());
+            }
         }
-        MetricsResolver resolver = resolvers.stream().filter(t -> MatchUtils.matchUrl(t.support(), endpoint))
-                .findAny()
-                .orElse(null);
-        int unavailableSeconds = resolver == null ? 0 : resolver.resolveUnavailableSeconds(processData);
-        Collection<String> metricsName;
-        if(resolver != null) {
-            metricsName = resolver.metricsName();
-        } else {
-            metricsName = processData.getMetrics().keySet();
+        if(cells.isEmpty()) {
+            return;
         }
-        List<Object> key = Lists.newArrayList(processData.getChannelCode());
-        List<Object> metrics = new ArrayList<>();
-        OpenapiResponse response = processData.getResponse();
-        int minCompletedThreshold = 10;
-        int errorRateThreshold = 30;//百分比
-        int httpCode = (response == null || response.getError() == null) ? 200 : response.getError().getHttpCode();
-        metrics.add(minCompletedThreshold);
-        metrics.add(errorRateThreshold);
-        metrics.add(httpCode);
-        metrics.add(unavailableSeconds);
-        metrics.add(DateTimeUtils.getCurrentSeconds());
-        metrics.add("errors");
-        metrics.add(httpCode < 500 ? 0 : 1);
-        metrics.add("request_too_many");
-        metrics.add(httpCode == 429 ? 1 : 0);
-        metrics.add("completed");
-        metrics.add(1);
-        if(processData.getMetrics() != null) {
-            Map<String, Object> processDataMetrics = processData.getMetrics();
-            metricsName.forEach(name -> {
-                if(processDataMetrics.containsKey(name)) {
-                    metrics.add(name);
-                    metrics.add(processDataMetrics.get(name));
-                }
-            });
+        long currentTimestamp = DateTimeUtils.getCurrentSeconds();
+        RBatch batch = redisson.createBatch();
+        for (Map.Entry<String, ChannelMetricsAggregator.Cell> entry : cells.entrySet()) {
+            String[] endpointAndChannel = entry.getKey().split("\n", 2);
+            executor.execute(batch, endpointAndChannel[0], ScriptType.metrics, Lists.newArrayList(endpointAndChannel[1]),
+                    entry.getValue().toParams(currentTimestamp));
         }
-        executor.execute(processData.getEndpoint(), ScriptType.metrics, key, metrics);
+        batch.execute();
     }
 
     public Set<String> getAllUnavailableChannels(List<String> channelCodes) {
+        Set<String> unavailable = unavailableChannelSnapshot.getUnavailableChannels(channelCodes);
+        if(unavailable != null) {
+            return unavailable;
+        }
         Map<String, String> map = redisson.getBuckets().get(channelCodes.stream()
                 .map(c -> String.format(unavailable_mark_key, c)).toArray(String[]::new));
         return map.keySet().stream().map(s -> s.split(":")[1]).collect(Collectors.toSet());
@@ -103,7 +125,11 @@ public class MetricsManager {
         params.addAll(metricsName);
 
         Object result = executor.execute(endpoint, ScriptType.metricsQuery, keys, params);
-        return convertToQueryResult(result);
+        Map<String, Map<String, Object>> metrics = convertToQueryResult(result);
+        //合并各节点的延迟分布，补充分位数
+        latencyHistograms.percentiles(metrics.keySet(), metricsName)
+                .forEach((channelCode, percentiles) -> metrics.get(channelCode).putAll(percentiles));
+        return metrics;
     }
 
     private Map<String, Map<String, Object>> convertToQueryResult(Object result) {
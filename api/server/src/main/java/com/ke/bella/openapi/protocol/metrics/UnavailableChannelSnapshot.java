@@ -0,0 +1,143 @@
+package com.ke.bella.openapi.protocol.metrics;
+
+import com.ke.bella.openapi.utils.DateTimeUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.ke.bella.openapi.protocol.metrics.MetricsManager.unavailable_mark_key;
+
+/**
+ * 节点本地的不可用渠道快照：metrics脚本标记渠道不可用时通过redis pub/sub推送，后台定时拉取兜底，
+ * 路由时只读内存；快照超过最大陈旧时间未刷新时，由调用方回退到直接查询redis。
+ * 只刷新最近被路由查询过的渠道，长时间未查询的渠道（如已下线）和已过期的标记在刷新时清理
+ */
+@Component
+@Slf4j
+public class UnavailableChannelSnapshot {
+    public static final String UNAVAILABLE_TOPIC = "bella-openapi-channel-unavailable";
+    private static final long IDLE_MILLIS = 5 * 60 * 1000;
+    @Autowired
+    private RedissonClient redisson;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${bella.openapi.route.unavailable-snapshot.enabled:true}")
+    private boolean enabled;
+    @Value("${bella.openapi.route.unavailable-snapshot.max-staleness-millis:5000}")
+    private long maxStalenessMillis;
+    //渠道 -> 不可用状态的过期时间(ms)
+    private final ConcurrentHashMap<String, Long> expireAt = new ConcurrentHashMap<>();
+    //渠道 -> 最近一次被路由查询的时间(ms)
+    private final ConcurrentHashMap<String, Long> knownChannels = new ConcurrentHashMap<>();
+    private volatile long lastRefreshMillis;
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    public void init() {
+        hitCounter = Counter.builder("bella.route.unavailable.snapshot").tag("result", "hit").register(meterRegistry);
+        missCounter = Counter.builder("bella.route.unavailable.snapshot").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("bella.route.unavailable.snapshot.lag", this, UnavailableChannelSnapshot::refreshLagMillis)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        if(enabled) {
+            redisson.getTopic(UNAVAILABLE_TOPIC).addListener(String.class, (channel, msg) -> onMessage(msg));
+        }
+    }
+
+    /**
+     * 快照可用时返回候选渠道中不可用的渠道，快照过期或未开启时返回null
+     */
+    public Set<String> getUnavailableChannels(Collection<String> channelCodes) {
+        if(!enabled) {
+            return null;
+        }
+        long now = DateTimeUtils.getCurrentMills();
+        channelCodes.forEach(code -> knownChannels.put(code, now));
+        if(refreshLagMillis() > maxStalenessMillis) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        Set<String> result = new HashSet<>();
+        for (String channelCode : channelCodes) {
+            Long expire = expireAt.get(channelCode);
+            if(expire != null && expire > now) {
+                result.add(channelCode);
+            }
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${bella.openapi.route.unavailable-snapshot.refresh-interval-millis:1000}")
+    public void refresh() {
+        if(!enabled) {
+            return;
+        }
+        long now = DateTimeUtils.getCurrentMills();
+        knownChannels.values().removeIf(lastSeen -> now - lastSeen > IDLE_MILLIS);
+        expireAt.values().removeIf(expire -> expire <= now);
+        List<String> channelCodes = new ArrayList<>(knownChannels.keySet());
+        if(!channelCodes.isEmpty()) {
+            try {
+                RBatch batch = redisson.createBatch();
+                channelCodes.forEach(code -> batch.getBucket(String.format(unavailable_mark_key, code)).remainTimeToLiveAsync());
+                List<?> ttls = batch.execute().getResponses();
+                for (int i = 0; i < channelCodes.size(); i++) {
+                    long ttl = ttls.get(i) == null ? -2 : ((Number) ttls.get(i)).longValue();
+                    if(ttl == -2) {
+                        expireAt.remove(channelCodes.get(i));
+                    } else {
+                        //-1表示没有过期时间，按一个刷新周期处理
+                        expireAt.put(channelCodes.get(i), now + (ttl > 0 ? ttl : maxStalenessMillis));
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.warn("refresh unavailable channels failed, " + e.getMessage(), e);
+                return;
+            }
+        }
+        lastRefreshMillis = now;
+    }
+
+    private void onMessage(String msg) {
+        int index = msg == null ? -1 : msg.lastIndexOf(':');
+        if(index <= 0) {
+            return;
+        }
+        String channelCode = msg.substring(0, index);
+        String seconds = msg.substring(index + 1);
+        if(!StringUtils.isNumeric(seconds)) {
+            return;
+        }
+        markUnavailable(channelCode, Long.parseLong(seconds));
+    }
+
+    /**
+     * 本节点直接标记渠道不可用，不等待redis通知
+     */
+    public void markUnavailable(String channelCode, long seconds) {
+        long expire = DateTimeUtils.getCurrentMills() + seconds * 1000;
+        expireAt.merge(channelCode, expire, Math::max);
+    }
+
+    private double refreshLagMillis() {
+        return lastRefreshMillis == 0 ? Double.MAX_VALUE : DateTimeUtils.getCurrentMills() - lastRefreshMillis;
+    }
+}
@@ -0,0 +1,79 @@
+package com.ke.bella.openapi.protocol.metrics;
+
+import com.ke.bella.openapi.utils.HttpUtils;
+import com.ke.bella.openapi.utils.StageMetrics;
+import io.micrometer.core.instrument.Tags;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+
+/**
+ * 统计向供应商发起请求的建连耗时（upstream_connect）和首包耗时（upstream_ttfb，从发起请求到收到响应头），
+ * 标签在发起请求的线程中确定
+ */
+@Component
+public class UpstreamTimingListener implements EventListener.Factory {
+
+    @PostConstruct
+    public void init() {
+        HttpUtils.setEventListenerFactory(this);
+    }
+
+    @Override
+    public EventListener create(Call call) {
+        return new Timing(StageMetrics.tags());
+    }
+
+    private static class Timing extends EventListener {
+        private final Tags tags;
+        private long callStart;
+        private long connectStart;
+        private boolean responded;
+
+        Timing(Tags tags) {
+            this.tags = tags;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            StageMetrics.record("upstream_connect", tags, System.nanoTime() - connectStart, true);
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+            StageMetrics.record("upstream_connect", tags, System.nanoTime() - connectStart, false);
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            if(!responded) {
+                responded = true;
+                StageMetrics.record("upstream_ttfb", tags, System.nanoTime() - callStart, true);
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            if(!responded) {
+                responded = true;
+                StageMetrics.record("upstream_ttfb", tags, System.nanoTime() - callStart, false);
+            }
+        }
+    }
+}
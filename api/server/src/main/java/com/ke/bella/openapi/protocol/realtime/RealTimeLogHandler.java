@@ -1,6 +1,5 @@
 package com.ke.bella.openapi.protocol.realtime;
 
-import com.ke.bella.openapi.utils.DateTimeUtils;
 import org.springframework.stereotype.Component;
 
 import com.ke.bella.openapi.EndpointProcessData;
@@ -10,7 +9,7 @@ import com.ke.bella.openapi.protocol.log.EndpointLogHandler;
 public class RealTimeLogHandler implements EndpointLogHandler {
     @Override
     public void process(EndpointProcessData processData) {
-        processData.setDuration(DateTimeUtils.getCurrentSeconds() - processData.getRequestTime());
+        processData.setDuration(processData.getLogTime() - processData.getRequestTime());
         processData.setUsage(processData.getDuration());
     }
 
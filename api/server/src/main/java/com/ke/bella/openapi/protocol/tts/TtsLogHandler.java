@@ -4,7 +4,6 @@ import com.ke.bella.openapi.EndpointProcessData;
 import com.ke.bella.openapi.protocol.OpenapiResponse;
 import com.ke.bella.openapi.protocol.tts.TtsRequest;
 import com.ke.bella.openapi.protocol.log.EndpointLogHandler;
-import com.ke.bella.openapi.utils.DateTimeUtils;
 import com.ke.bella.openapi.utils.TokenCounter;
 import com.knuddels.jtokkit.api.EncodingType;
 import org.springframework.stereotype.Component;
@@ -20,7 +19,7 @@ public class TtsLogHandler implements EndpointLogHandler {
         TtsRequest request = (TtsRequest) processData.getRequest();
         long startTime = processData.getRequestTime();
         if(processData.getMetrics() == null) {
-            int ttlt = (int) (DateTimeUtils.getCurrentSeconds() - startTime);
+            int ttlt = (int) (processData.getLogTime() - startTime);
             Map<String, Object> map = new HashMap<>();
             map.put("ttlt", ttlt);
             processData.setMetrics(map);
@@ -1,6 +1,7 @@
 package com.ke.bella.openapi.script;
 
 import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBatch;
 import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,4 +27,17 @@ public class LuaScriptExecutor {
         RScript rScript = redissonClient.getScript();
         return rScript.evalSha(RScript.Mode.READ_WRITE, sha, RScript.ReturnType.VALUE, keys, args.toArray());
     }
+
+    /**
+     * 将脚本调用加入批量请求，由调用方执行batch.execute()一次性发送
+     */
+    public void execute(RBatch batch, String fileName, ScriptType scriptType, List<Object> keys, List<Object> args) throws IOException {
+        String scriptName = scriptType.getScriptName(fileName);
+        String defaultName = scriptType.getScriptName("/default");
+        String sha = luaScriptManager.getScriptSha(scriptName, defaultName);
+        if(StringUtils.isBlank(sha)) {
+            return;
+        }
+        batch.getScript().evalShaAsync(RScript.Mode.READ_WRITE, sha, RScript.ReturnType.VALUE, keys, args.toArray());
+    }
 }
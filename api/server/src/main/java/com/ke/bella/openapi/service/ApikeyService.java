@@ -1,5 +1,6 @@
 package com.ke.bella.openapi.service;
 
+import com.alicp.jetcache.Cache;
 import com.alicp.jetcache.CacheManager;
 import com.alicp.jetcache.anno.CachePenetrationProtect;
 import com.alicp.jetcache.anno.CacheType;
@@ -25,7 +26,7 @@ import com.ke.bella.openapi.tables.pojos.ApikeyMonthCostDB;
 import com.ke.bella.openapi.tables.pojos.ApikeyRoleDB;
 import com.ke.bella.openapi.utils.EncryptUtils;
 import com.ke.bella.openapi.utils.JacksonUtils;
-import com.ke.bella.openapi.utils.MatchUtils;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,15 +34,20 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
 import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static com.ke.bella.openapi.common.EntityConstants.ACTIVE;
 import static com.ke.bella.openapi.common.EntityConstants.CONSOLE;
@@ -80,7 +86,19 @@ public class ApikeyService {
     private ApplicationContext applicationContext;
     @Autowired
     private ISafetyAuditService safetyAuditService;
+    @Value("${bella.openapi.cost.flush-batch-size:500}")
+    private int costFlushBatchSize;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${bella.openapi.auth.cache-expire-seconds:300}")
+    private int authCacheExpireSeconds;
+    @Value("${bella.openapi.auth.negative-expire-seconds:10}")
+    private int authNegativeExpireSeconds;
     private static final String apikeyCacheKey = "apikey:sha:";
+    private static final String authCacheKey = "apikey:auth:";
+    //ak不存在、已停用或主ak不可用时缓存的占位值
+    private static final ApikeyInfo AUTH_NOT_FOUND = new ApikeyInfo();
+    private static final String costCacheKey = "apikey:cost:month:";
 
     @PostConstruct
     public void postConstruct() {
@@ -94,6 +112,23 @@ public class ApikeyService {
                 .penetrationProtectTimeout(Duration.ofSeconds(10))
                 .build();
         cacheManager.getOrCreateCache(quickConfig);
+        //与loadCost的注解配置一致，批量刷写后直接更新
+        QuickConfig costConfig = QuickConfig.newBuilder(costCacheKey)
+                .cacheType(CacheType.REMOTE)
+                .expire(Duration.ofDays(31))
+                .penetrationProtect(true)
+                .penetrationProtectTimeout(Duration.ofSeconds(5))
+                .build();
+        cacheManager.getOrCreateCache(costConfig);
+        //鉴权结果（ak、主ak、权限路径）整体缓存，修改ak时按sha失效并广播到其他节点
+        QuickConfig authConfig = QuickConfig.newBuilder(authCacheKey)
+                .cacheType(CacheType.LOCAL)
+                .syncLocal(true)
+                .expire(Duration.ofSeconds(authCacheExpireSeconds))
+                .localExpire(Duration.ofSeconds(authCacheExpireSeconds))
+                .localLimit(10000)
+                .build();
+        cacheManager.getOrCreateCache(authConfig);
     }
 
     @Transactional
@@ -148,8 +183,7 @@ public class ApikeyService {
         db.setRemark(op.getRemark());
         db = apikeyRepo.insert(db);
         if(CollectionUtils.isNotEmpty(op.getPaths())) {
-           boolean match = op.getPaths().stream().allMatch(url -> apikey.getRolePath().getIncluded().stream().anyMatch(pattern -> MatchUtils.matchUrl(pattern, url))
-                    && apikey.getRolePath().getExcluded().stream().noneMatch(pattern -> MatchUtils.matchUrl(pattern, url)));
+            boolean match = op.getPaths().stream().allMatch(apikey::hasPermission);
             Assert.isTrue(match, "超出ak的权限范围");
             updateRole(ApikeyOps.RoleOp.builder().code(db.getCode()).paths(op.getPaths()).build());
         }
@@ -166,6 +200,8 @@ public class ApikeyService {
         ApikeyDB db = new ApikeyDB();
         db.setAkSha(sha);
         db.setAkDisplay(display);
+        //旧sha在更新后无法再查到，先取出
+        evictAuth(op.getCode());
         apikeyRepo.update(db, op.getCode());
         return ak;
     }
@@ -173,11 +209,13 @@ public class ApikeyService {
     @Transactional
     public void rename(ApikeyOps.NameOp op) {
         apikeyRepo.update(op, op.getCode());
+        evictAuth(op.getCode());
     }
 
     @Transactional
     public void bindService(ApikeyOps.ServiceOp op) {
         apikeyRepo.update(op, op.getCode());
+        evictAuth(op.getCode());
     }
 
     @Transactional
@@ -195,6 +233,7 @@ public class ApikeyService {
             op.setRoleCode(roleDB.getRoleCode());
         }
         apikeyRepo.update(op, op.getCode());
+        evictAuth(op.getCode());
     }
 
     @Transactional
@@ -206,6 +245,7 @@ public class ApikeyService {
         db.setCertifyCode(op.getCertifyCode());
         db.setSafetyLevel(level);
         apikeyRepo.update(db, op.getCode());
+        evictAuth(op.getCode());
     }
 
     @Transactional
@@ -213,6 +253,7 @@ public class ApikeyService {
         apikeyRepo.checkExist(op.getCode(), true);
         checkPermission(op.getCode());
         apikeyRepo.update(op, op.getCode());
+        evictAuth(op.getCode());
     }
 
     @Transactional
@@ -221,6 +262,19 @@ public class ApikeyService {
         checkPermission(op.getCode());
         String status = active ? ACTIVE : INACTIVE;
         apikeyRepo.updateStatus(op.getCode(), status);
+        evictAuth(op.getCode());
+    }
+
+    /**
+     * 按sha更新角色（如将用户的控制台ak设为管理员），由系统调用，不校验操作人权限
+     */
+    @Transactional
+    public void updateRoleBySha(String sha, String roleCode) {
+        apikeyRepo.updateRoleBySha(sha, roleCode);
+        ApikeyInfo info = apikeyRepo.queryBySha(sha);
+        if(info != null) {
+            evictAuth(info.getCode());
+        }
     }
 
     public ApikeyInfo verifyAuth(String auth) {
@@ -231,25 +285,77 @@ public class ApikeyService {
             ak = auth;
         }
         String sha = EncryptUtils.sha256(ak);
-        ApikeyInfo info = queryBySha(sha, true);
+        ApikeyInfo info = useCache ? loadAuth(sha, ak) : resolveAuth(sha, ak);
         if(info == null) {
             String display = EncryptUtils.desensitizeByLength(auth);
             String displayAk = EncryptUtils.desensitize(ak);
             throw new ChannelException.AuthorizationException("api key不存在，请求的header为：" + display + ", apikey为：" + displayAk);
         }
+        return info;
+    }
+
+    /**
+     * 缓存的鉴权结果，缓存项创建后不再修改；不存在的ak以较短的过期时间缓存占位值
+     */
+    private ApikeyInfo loadAuth(String sha, String ak) {
+        Cache<String, ApikeyInfo> cache = cacheManager.getCache(authCacheKey);
+        ApikeyInfo info = cache.get(sha);
+        if(info != null) {
+            meterRegistry.counter("bella.apikey.auth.cache", "result", info == AUTH_NOT_FOUND ? "negative_hit" : "hit").increment();
+            return info == AUTH_NOT_FOUND ? null : info;
+        }
+        meterRegistry.counter("bella.apikey.auth.cache", "result", "miss").increment();
+        long start = System.nanoTime();
+        info = resolveAuth(sha, ak);
+        meterRegistry.timer("bella.apikey.auth.load").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if(info == null) {
+            cache.put(sha, AUTH_NOT_FOUND, authNegativeExpireSeconds, TimeUnit.SECONDS);
+        } else {
+            cache.put(sha, info);
+        }
+        return info;
+    }
+
+    private ApikeyInfo resolveAuth(String sha, String ak) {
+        ApikeyInfo info = queryBySha(sha, false);
+        if(info == null || INACTIVE.equals(info.getStatus())) {
+            return null;
+        }
         if(StringUtils.isNotEmpty(info.getParentCode())) {
             ApikeyInfo parent = queryByCode(info.getParentCode(), true);
             if(parent == null) {
-                String display = EncryptUtils.desensitizeByLength(auth);
-                String displayAk = EncryptUtils.desensitize(ak);
-                throw new ChannelException.AuthorizationException("api key不存在，请求的header为：" + display + ", apikey为：" + displayAk);
+                return null;
             }
+            parent.getPermissionMatcher();
             info.setParentInfo(parent);
         }
+        //提前构建权限匹配器，缓存项在多个请求间共享
+        info.getPermissionMatcher();
         info.setApikey(ak);
         return info;
     }
 
+    /**
+     * 失效ak及其子ak（子ak的鉴权结果包含主ak信息）的鉴权缓存，在事务提交后执行，避免提交前被其他请求以旧数据重新加载
+     */
+    private void evictAuth(String code) {
+        Set<String> shas = new HashSet<>(apikeyRepo.listShaWithChildren(code));
+        if(shas.isEmpty()) {
+            return;
+        }
+        Cache<String, ApikeyInfo> cache = cacheManager.getCache(authCacheKey);
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    cache.removeAll(shas);
+                }
+            });
+        } else {
+            cache.removeAll(shas);
+        }
+    }
+
     public ApikeyInfo queryBySha(String sha, boolean onlyActive) {
         ApikeyInfo apikeyInfo;
         if(useCache && onlyActive) {
@@ -286,6 +392,25 @@ public class ApikeyService {
         return apikeyCostRepo.queryCost(akCode, month);
     }
 
+    /**
+     * 批量累加费用并刷新月花费缓存，在一个事务中写入，失败时全部回滚由CostCounter重试
+     *
+     * @return 写入的ak数
+     */
+    @Transactional
+    public int recordCosts(String month, Map<String, BigDecimal> costs) {
+        if(costs.isEmpty()) {
+            return 0;
+        }
+        int rows = apikeyCostRepo.batchIncrement(month, costs, costFlushBatchSize);
+        Map<String, BigDecimal> amounts = apikeyCostRepo.queryCosts(costs.keySet(), month, costFlushBatchSize);
+        Map<String, BigDecimal> cacheValues = new HashMap<>();
+        amounts.forEach((akCode, amount) -> cacheValues.put(akCode + ":" + month, amount));
+        Cache<String, BigDecimal> cache = cacheManager.getCache(costCacheKey);
+        cache.putAll(cacheValues);
+        return rows;
+    }
+
     @Cached(name = "apikey:cost:month:", key = "#akCode + ':' + #month", expire = 31 * 24 * 3600,
             condition = "T(com.ke.bella.openapi.utils.DateTimeUtils).isCurrentMonth(#month)")
     @CachePenetrationProtect(timeout = 5)
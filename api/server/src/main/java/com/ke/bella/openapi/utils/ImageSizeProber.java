@@ -0,0 +1,209 @@
+package com.ke.bella.openapi.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片宽高探测：只读取文件头（PNG IHDR、JPEG SOF、GIF、WebP、BMP）解析尺寸，
+ * url通过Range请求且最多读取MAX_HEADER_BYTES，base64只解码前缀；无法从文件头识别时才完整解码。
+ * 结果按url或base64内容的哈希缓存，失败返回null；失败结果短时间缓存，同一图片的并发探测只执行一次
+ */
+@Slf4j
+public class ImageSizeProber {
+    private static final int MAX_HEADER_BYTES = 256 * 1024;
+    private static final int READ_CHUNK = 8 * 1024;
+    private static final int B64_PREFIX_CHARS = 64 * 1024;
+    private static final int CONNECT_TIMEOUT_SECONDS = 2;
+    private static final int READ_TIMEOUT_SECONDS = 5;
+    private static final long SUCCESS_EXPIRE_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final long FAILURE_EXPIRE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    //探测失败缓存为Optional.empty()
+    private static final Cache<String, Optional<Pair<Integer, Integer>>> cache = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfter(new Expiry<String, Optional<Pair<Integer, Integer>>>() {
+                @Override
+                public long expireAfterCreate(String key, Optional<Pair<Integer, Integer>> value, long currentTime) {
+                    return value.isPresent() ? SUCCESS_EXPIRE_NANOS : FAILURE_EXPIRE_NANOS;
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, Optional<Pair<Integer, Integer>> value, long currentTime, long currentDuration) {
+                    return expireAfterCreate(key, value, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(String key, Optional<Pair<Integer, Integer>> value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
+    public static Pair<Integer, Integer> fromUrl(String imageUrl) {
+        return cache.get(imageUrl, k -> Optional.ofNullable(probeUrl(imageUrl))).orElse(null);
+    }
+
+    /**
+     * @param base64DataUrl data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAyA...
+     */
+    public static Pair<Integer, Integer> fromBase64(String base64DataUrl) {
+        String key = "b64:" + Hashing.murmur3_128().hashString(base64DataUrl, StandardCharsets.UTF_8);
+        return cache.get(key, k -> Optional.ofNullable(probeBase64(base64DataUrl))).orElse(null);
+    }
+
+    private static Pair<Integer, Integer> probeUrl(String imageUrl) {
+        Request request = new Request.Builder()
+                .url(imageUrl)
+                .header("Range", "bytes=0-" + (MAX_HEADER_BYTES - 1))
+                .build();
+        try (Response response = HttpUtils.httpRequest(request, CONNECT_TIMEOUT_SECONDS, READ_TIMEOUT_SECONDS)) {
+            if(!response.isSuccessful() || response.body() == null) {
+                return null;
+            }
+            //服务端不支持Range时返回完整内容，读够文件头即停止
+            byte[] buffer = new byte[MAX_HEADER_BYTES];
+            int length = 0;
+            InputStream in = response.body().byteStream();
+            while (length < buffer.length) {
+                int n = in.read(buffer, length, Math.min(READ_CHUNK, buffer.length - length));
+                if(n < 0) {
+                    //读完了整个文件，文件头无法识别时完整解码
+                    Pair<Integer, Integer> size = parse(buffer, length);
+                    return size != null ? size : decode(buffer, length);
+                }
+                length += n;
+                Pair<Integer, Integer> size = parse(buffer, length);
+                if(size != null) {
+                    return size;
+                }
+            }
+            return null;
+        } catch (Exception e) {
+            LOGGER.info("probe image size failed, url: {}, {}", imageUrl, e.getMessage());
+            return null;
+        }
+    }
+
+    private static Pair<Integer, Integer> probeBase64(String base64DataUrl) {
+        try {
+            String base64Str = base64DataUrl.substring(base64DataUrl.indexOf(',') + 1);
+            if(base64Str.length() > B64_PREFIX_CHARS) {
+                byte[] prefix = Base64.getDecoder().decode(base64Str.substring(0, B64_PREFIX_CHARS));
+                Pair<Integer, Integer> size = parse(prefix, prefix.length);
+                if(size != null) {
+                    return size;
+                }
+            }
+            byte[] bytes = Base64.getDecoder().decode(base64Str);
+            Pair<Integer, Integer> size = parse(bytes, bytes.length);
+            return size != null ? size : decode(bytes, bytes.length);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Pair<Integer, Integer> decode(byte[] data, int length) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(data, 0, length));
+            return image == null ? null : Pair.of(image.getWidth(), image.getHeight());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 从文件头解析宽高，格式无法识别或数据不完整时返回null
+     */
+    private static Pair<Integer, Integer> parse(byte[] b, int length) {
+        if(length >= 24 && (b[0] & 0xFF) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G') {
+            return Pair.of(int32BE(b, 16), int32BE(b, 20));
+        }
+        if(length >= 10 && b[0] == 'G' && b[1] == 'I' && b[2] == 'F') {
+            return Pair.of(int16LE(b, 6), int16LE(b, 8));
+        }
+        if(length >= 26 && b[0] == 'B' && b[1] == 'M') {
+            return Pair.of(int32LE(b, 18), Math.abs(int32LE(b, 22)));
+        }
+        if(length >= 30 && b[0] == 'R' && b[1] == 'I' && b[2] == 'F' && b[3] == 'F' && b[8] == 'W' && b[9] == 'E' && b[10] == 'B' && b[11] == 'P') {
+            return parseWebp(b);
+        }
+        if(length >= 4 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xD8) {
+            return parseJpeg(b, length);
+        }
+        return null;
+    }
+
+    private static Pair<Integer, Integer> parseWebp(byte[] b) {
+        String chunk = new String(b, 12, 4, StandardCharsets.US_ASCII);
+        switch (chunk) {
+        case "VP8 ":
+            return Pair.of(int16LE(b, 26) & 0x3FFF, int16LE(b, 28) & 0x3FFF);
+        case "VP8L":
+            int b0 = b[21] & 0xFF, b1 = b[22] & 0xFF, b2 = b[23] & 0xFF, b3 = b[24] & 0xFF;
+            return Pair.of(1 + (((b1 & 0x3F) << 8) | b0), 1 + (((b3 & 0xF) << 10) | (b2 << 2) | ((b1 & 0xC0) >> 6)));
+        case "VP8X":
+            return Pair.of(1 + int24LE(b, 24), 1 + int24LE(b, 27));
+        default:
+            return null;
+        }
+    }
+
+    private static Pair<Integer, Integer> parseJpeg(byte[] b, int length) {
+        int i = 2;
+        while (i + 9 < length) {
+            if((b[i] & 0xFF) != 0xFF) {
+                return null;
+            }
+            int marker = b[i + 1] & 0xFF;
+            if(marker == 0xFF) {
+                //填充字节
+                i++;
+                continue;
+            }
+            if(marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                i += 2;
+                continue;
+            }
+            //SOF0-SOF15，排除DHT(C4)、JPG(C8)、DAC(CC)
+            if(marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                return Pair.of(int16BE(b, i + 7), int16BE(b, i + 5));
+            }
+            i += 2 + int16BE(b, i + 2);
+        }
+        return null;
+    }
+
+    private static int int16BE(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    private static int int32BE(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16) | ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+    }
+
+    private static int int16LE(byte[] b, int offset) {
+        return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int int24LE(byte[] b, int offset) {
+        return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8) | ((b[offset + 2] & 0xFF) << 16);
+    }
+
+    private static int int32LE(byte[] b, int offset) {
+        return int24LE(b, offset) | ((b[offset + 3] & 0xFF) << 24);
+    }
+}
@@ -21,10 +21,15 @@ public class SseHelper {
     }
 
     public static void send(SseEmitter sse, SseEventBuilder event) {
+        long start = System.nanoTime();
+        boolean success = false;
         try {
             sse.send(event);
+            success = true;
         } catch (IOException e) {
             LOGGER.warn(e.getMessage(), e);
+        } finally {
+            StageMetrics.record("sse_send", StageMetrics.NO_CONTEXT, System.nanoTime() - start, success);
         }
     }
 
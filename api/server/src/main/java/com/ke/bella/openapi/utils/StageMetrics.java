@@ -0,0 +1,123 @@
+package com.ke.bella.openapi.utils;
+
+import com.ke.bella.openapi.EndpointContext;
+import com.ke.bella.openapi.EndpointProcessData;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 请求各阶段的耗时统计，指标名bella.request.stage，按阶段、能力点、模型、渠道、协议和结果打标签；
+ * 标签取自当前线程的请求上下文，路由前的阶段没有渠道信息。
+ * 启动时通过bind绑定应用的MeterRegistry，绑定前使用全局注册表；Timer按阶段+标签缓存，热路径上不再重复注册
+ */
+public class StageMetrics {
+    public static final String METRIC_NAME = "bella.request.stage";
+    private static final String NONE = "none";
+    //不在请求线程中（如Disruptor消费线程、OkHttp回调线程）且无法取得请求信息时使用
+    public static final Tags NO_CONTEXT = tags(new EndpointProcessData());
+    private static volatile MeterRegistry registry = Metrics.globalRegistry;
+    private static final ConcurrentHashMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    public static void bind(MeterRegistry meterRegistry) {
+        registry = meterRegistry;
+        timers.clear();
+    }
+
+    public static <T> T time(String stage, Supplier<T> body) {
+        return time(stage, null, body);
+    }
+
+    /**
+     * @param tags 为null时取当前线程的请求上下文
+     */
+    public static <T> T time(String stage, Tags tags, Supplier<T> body) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = body.get();
+            success = true;
+            return result;
+        } finally {
+            record(stage, tags == null ? tags() : tags, System.nanoTime() - start, success);
+        }
+    }
+
+    public static void run(String stage, Runnable body) {
+        run(stage, null, body);
+    }
+
+    public static void run(String stage, Tags tags, Runnable body) {
+        time(stage, tags, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    public static void record(String stage, long nanos, boolean success) {
+        record(stage, tags(), nanos, success);
+    }
+
+    public static void record(String stage, Tags tags, long nanos, boolean success) {
+        timers.computeIfAbsent(new TimerKey(stage, tags, success), key -> Timer.builder(METRIC_NAME)
+                .tags(key.tags)
+                .tag("stage", key.stage)
+                .tag("outcome", key.success ? "success" : "error")
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 当前线程的请求标签，不在请求线程中时所有标签为none
+     */
+    public static Tags tags() {
+        EndpointProcessData processData = EndpointContext.peekProcessData();
+        return processData == null ? NO_CONTEXT : tags(processData);
+    }
+
+    public static Tags tags(EndpointProcessData processData) {
+        return Tags.of("endpoint", valueOf(processData.getEndpoint()),
+                "model", valueOf(processData.getModel()),
+                "channel", valueOf(processData.getChannelCode()),
+                "protocol", valueOf(processData.getProtocol()));
+    }
+
+    private static String valueOf(String value) {
+        return value == null ? NONE : value;
+    }
+
+    private static class TimerKey {
+        private final String stage;
+        private final Tags tags;
+        private final boolean success;
+
+        TimerKey(String stage, Tags tags, boolean success) {
+            this.stage = stage;
+            this.tags = tags;
+            this.success = success;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof TimerKey)) {
+                return false;
+            }
+            TimerKey other = (TimerKey) o;
+            return success == other.success && stage.equals(other.stage) && tags.equals(other.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stage, tags, success);
+        }
+    }
+}
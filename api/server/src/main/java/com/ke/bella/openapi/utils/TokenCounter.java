@@ -6,13 +6,6 @@ import com.knuddels.jtokkit.api.EncodingRegistry;
 import com.knuddels.jtokkit.api.EncodingType;
 import org.apache.commons.lang3.tuple.Pair;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.net.URL;
-import java.util.Base64;
-
 public class TokenCounter {
     private static final EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
     /**
@@ -31,43 +24,14 @@ public class TokenCounter {
         //gpt-4-vision模型，imageToken计算
         //!!! 注意，其他模型的imageToken计算方式可能不同，需要单独实现
         // 2024.05.23补充：4o token计算相同
-        Pair<Integer, Integer> imgSize = null;
-        if(imageStr.startsWith("http")) {
-            imgSize = imageSizeFromUrl(imageStr);
-        } else {
-            imgSize = imageSizeFromB64(imageStr);
+        if(lowResolution) {
+            return imageToken(0, 0, true);
         }
-        return imageToken(imgSize.getLeft(), imgSize.getRight(), lowResolution);
-    }
-
-    private static Pair<Integer, Integer> imageSizeFromB64(String base64DataUrl) {
-        //从base64DataUrl中提取base64Str：data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAyA...
-        String base64Str = base64DataUrl.split(",")[1];
-        //将base64转化为InputStream
-        byte[] decodedBytes = Base64.getDecoder().decode(base64Str);
-        try (InputStream inputStream = new ByteArrayInputStream(decodedBytes)) {
-            //读取图片url，获取像素宽度，长度
-            Image image = ImageIO.read(inputStream);
-            // 获取图片的宽度
-            int width = image.getWidth(null);
-            int height = image.getHeight(null);
-            return Pair.of(width, height);
-        } catch (Exception e) {
-            return Pair.of(0, 0);
-        }
-    }
-
-    private static Pair<Integer, Integer> imageSizeFromUrl(String imageUrl) {
-        try (InputStream inputStream = new URL(imageUrl).openStream()) {
-            //读取图片url，获取像素宽度，长度
-            Image image = ImageIO.read(inputStream);
-            // 获取图片的宽度
-            int width = image.getWidth(null);
-            int height = image.getHeight(null);
-            return Pair.of(width, height);
-        } catch (Exception e) {
-            return Pair.of(0, 0);
+        Pair<Integer, Integer> imgSize = imageStr.startsWith("http") ? ImageSizeProber.fromUrl(imageStr) : ImageSizeProber.fromBase64(imageStr);
+        if(imgSize == null) {
+            imgSize = Pair.of(0, 0);
         }
+        return imageToken(imgSize.getLeft(), imgSize.getRight(), false);
     }
 
     private static int imageToken(double widthpx, double heightpx, boolean lowResolution) {
@@ -0,0 +1,64 @@
+-- 批量写入一批请求结束后的限流计数：减少并发请求数、累加rpm时间桶
+-- Redis Cluster下一次调用的KEYS必须在同一个slot，调用方每个apikey+模型的key单独调用
+-- 输入参数
+-- KEYS：前ARGV[1]个为并发计数key，其余为rpm桶key
+-- ARGV[1]：并发计数key的数量
+-- ARGV[2]：当前时间戳(s)
+-- ARGV[3]：rpm桶的时间跨度(s)
+-- ARGV[4...]：与KEYS一一对应的数量（并发减少数、rpm请求数）
+local concurrent_size = tonumber(ARGV[1])
+local current_timestamp = tonumber(ARGV[2])
+local bucket_size = tonumber(ARGV[3])
+
+-- 一分钟的时间窗口（以秒为单位）
+local WINDOW_SIZE = 60
+-- key过期时间设置为2分钟
+local EXPIRY_TIME = 120
+
+-- 错误处理函数
+local function handle_error(err)
+    return { "An error occurred: " .. tostring(err) }
+end
+
+local function decrement_concurrent(key, amount)
+    local current_count = redis.call("DECRBY", key, amount)
+    if current_count < 0 then
+        redis.call("DEL", key)
+    elseif current_count > 0 then
+        redis.call("EXPIRE", key, EXPIRY_TIME)
+    end
+end
+
+local function increment_bucket(key, amount)
+    local bucket = current_timestamp - current_timestamp % bucket_size
+    local count = redis.call("HINCRBY", key, bucket, amount)
+    -- 只在新建桶时清理窗口外的桶
+    if count == amount then
+        local min_timestamp = current_timestamp - WINDOW_SIZE
+        local buckets = redis.call("HKEYS", key)
+        for _, field in ipairs(buckets) do
+            if tonumber(field) <= min_timestamp then
+                redis.call("HDEL", key, field)
+            end
+        end
+    end
+    redis.call("EXPIRE", key, EXPIRY_TIME)
+end
+
+-- 主要逻辑
+local success, result = pcall(function()
+    for i, key in ipairs(KEYS) do
+        local amount = tonumber(ARGV[i + 3])
+        if i <= concurrent_size then
+            decrement_concurrent(key, amount)
+        else
+            increment_bucket(key, amount)
+        end
+    end
+end)
+
+if not success then
+    return handle_error(result)
+end
+
+return "OK"
@@ -0,0 +1,46 @@
+-- 并发配额租借：hash中每个节点一个field，值为"持有数:心跳时间"，所有节点的持有数之和不超过限制
+-- 心跳超时的节点视为已下线，回收其持有的配额
+-- 输入参数
+local key = KEYS[1]
+local node = ARGV[1]
+local target = tonumber(ARGV[2]) -- 节点期望持有的数量
+local limit = tonumber(ARGV[3])
+local now = tonumber(ARGV[4])
+
+-- 节点心跳超时时间（秒）
+local NODE_TIMEOUT = 30
+
+-- 错误处理函数
+local function handle_error(err)
+    return { "An error occurred: " .. tostring(err) }
+end
+
+-- 主要逻辑
+local success, result = pcall(function()
+    local others = 0
+    local nodes = redis.call("HGETALL", key)
+    for i = 1, #nodes, 2 do
+        if nodes[i] ~= node then
+            local held, heartbeat = string.match(nodes[i + 1], "(%d+):(%d+)")
+            if held == nil or now - tonumber(heartbeat) > NODE_TIMEOUT then
+                redis.call("HDEL", key, nodes[i])
+            else
+                others = others + tonumber(held)
+            end
+        end
+    end
+    local granted = math.max(0, math.min(target, limit - others))
+    if granted == 0 and target == 0 then
+        redis.call("HDEL", key, node)
+    else
+        redis.call("HSET", key, node, granted .. ":" .. now)
+        redis.call("EXPIRE", key, NODE_TIMEOUT * 2)
+    end
+    return granted
+end)
+
+if not success then
+    return handle_error(result)
+end
+
+return tostring(result)
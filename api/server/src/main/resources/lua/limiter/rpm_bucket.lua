@@ -0,0 +1,40 @@
+-- 使用固定时间桶记录每分钟请求数：hash中每个field为一个桶的起始时间戳，value为桶内的请求数
+-- 输入参数
+local key = KEYS[1]
+local current_timestamp = tonumber(ARGV[1])
+local bucket_size = tonumber(ARGV[2])
+
+-- 一分钟的时间窗口（以秒为单位）
+local WINDOW_SIZE = 60
+-- key过期时间设置为2分钟
+local EXPIRY_TIME = 120
+
+-- 错误处理函数
+local function handle_error(err)
+    return { "An error occurred: " .. tostring(err) }
+end
+
+-- 主要逻辑
+local success, result = pcall(function()
+    local bucket = current_timestamp - current_timestamp % bucket_size
+    local count = redis.call("HINCRBY", key, bucket, 1)
+
+    -- 只在新建桶时清理窗口外的桶，hash中最多保留 WINDOW_SIZE / bucket_size + 1 个桶
+    if count == 1 then
+        local min_timestamp = current_timestamp - WINDOW_SIZE
+        local buckets = redis.call("HKEYS", key)
+        for _, field in ipairs(buckets) do
+            if tonumber(field) <= min_timestamp then
+                redis.call("HDEL", key, field)
+            end
+        end
+    end
+
+    redis.call("EXPIRE", key, EXPIRY_TIME)
+end)
+
+if not success then
+    return handle_error(result)
+end
+
+return "OK"
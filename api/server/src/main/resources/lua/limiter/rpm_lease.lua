@@ -0,0 +1,31 @@
+-- 从集群的每分钟配额中租借一批许可，返回实际租借到的数量
+-- 输入参数
+local key = KEYS[1] -- 包含分钟窗口
+local limit = tonumber(ARGV[1])
+local batch = tonumber(ARGV[2])
+
+-- key过期时间设置为2分钟
+local EXPIRY_TIME = 120
+
+-- 错误处理函数
+local function handle_error(err)
+    return { "An error occurred: " .. tostring(err) }
+end
+
+-- 主要逻辑
+local success, result = pcall(function()
+    local used = tonumber(redis.call("GET", key) or "0")
+    local granted = math.min(batch, limit - used)
+    if granted <= 0 then
+        return 0
+    end
+    redis.call("INCRBY", key, granted)
+    redis.call("EXPIRE", key, EXPIRY_TIME)
+    return granted
+end)
+
+if not success then
+    return handle_error(result)
+end
+
+return tostring(result)
@@ -0,0 +1,44 @@
+-- 未刷写费用的同步：hash中每个节点一个field，值为"未刷写费用:心跳时间"，上报本节点的值并返回其他节点的合计
+-- 心跳超时的节点视为已下线，不再计入；其费用由使用同一预写日志目录的节点重启重放后重新上报，此前按少计处理
+-- 输入参数
+local key = KEYS[1]
+local node = ARGV[1]
+local amount = tonumber(ARGV[2]) -- 本节点未刷写的费用，为0时删除本节点的field
+local now = tonumber(ARGV[3])
+
+-- 节点心跳超时时间（秒）
+local NODE_TIMEOUT = 30
+
+-- 错误处理函数
+local function handle_error(err)
+    return { "An error occurred: " .. tostring(err) }
+end
+
+-- 主要逻辑
+local success, result = pcall(function()
+    local others = 0
+    local nodes = redis.call("HGETALL", key)
+    for i = 1, #nodes, 2 do
+        if nodes[i] ~= node then
+            local pending, heartbeat = string.match(nodes[i + 1], "([%-%d%.]+):(%d+)")
+            if pending == nil or now - tonumber(heartbeat) > NODE_TIMEOUT then
+                redis.call("HDEL", key, nodes[i])
+            else
+                others = others + tonumber(pending)
+            end
+        end
+    end
+    if amount == 0 then
+        redis.call("HDEL", key, node)
+    else
+        redis.call("HSET", key, node, ARGV[2] .. ":" .. now)
+        redis.call("EXPIRE", key, NODE_TIMEOUT * 2)
+    end
+    return others
+end)
+
+if not success then
+    return handle_error(result)
+end
+
+return tostring(result)
@@ -0,0 +1,39 @@
+-- 预占当前分钟的token额度：KEYS[1]为apikey+模型的计数，KEYS[2]为渠道的计数，限制为0表示不限制
+-- 返回值：0 预占成功；1 apikey额度不足；2 渠道额度不足
+-- 输入参数
+local ak_key = KEYS[1]
+local channel_key = KEYS[2]
+local ak_limit = tonumber(ARGV[1])
+local channel_limit = tonumber(ARGV[2])
+local tokens = tonumber(ARGV[3])
+
+-- key过期时间设置为2分钟
+local EXPIRY_TIME = 120
+
+-- 错误处理函数
+local function handle_error(err)
+    return { "An error occurred: " .. tostring(err) }
+end
+
+-- 主要逻辑，计数为0时总是允许，避免单个请求超过限制后永远无法通过
+local success, result = pcall(function()
+    local ak_used = tonumber(redis.call("GET", ak_key) or "0")
+    if ak_limit > 0 and ak_used > 0 and ak_used + tokens > ak_limit then
+        return 1
+    end
+    local channel_used = tonumber(redis.call("GET", channel_key) or "0")
+    if channel_limit > 0 and channel_used > 0 and channel_used + tokens > channel_limit then
+        return 2
+    end
+    redis.call("INCRBY", ak_key, tokens)
+    redis.call("EXPIRE", ak_key, EXPIRY_TIME)
+    redis.call("INCRBY", channel_key, tokens)
+    redis.call("EXPIRE", channel_key, EXPIRY_TIME)
+    return 0
+end)
+
+if not success then
+    return handle_error(result)
+end
+
+return tostring(result)
@@ -19,6 +19,9 @@ local EXPIRY_TIME = 60
 -- 不可用时长的过期时间（600秒）
 local UNAVAILABLE_EXPIRY_TIME = 600
 
+-- 渠道不可用通知的pub/sub频道
+local UNAVAILABLE_TOPIC = "bella-openapi-channel-unavailable"
+
 local last_timestamp
 
 -- 错误处理函数
@@ -120,6 +123,8 @@ local function update_channel_status()
     if status ~= "available" and channel_unavailable_expire_time > 0 then
         -- 标记为不可用，并记录不可用时间
         redis.call("SET", mark_key, "true", "EX", channel_unavailable_expire_time)
+        -- 通知各节点刷新本地的不可用渠道快照
+        redis.call("PUBLISH", UNAVAILABLE_TOPIC, channel_id .. ":" .. channel_unavailable_expire_time)
         redis.call("INCRBY", unavailable_time_key, channel_unavailable_expire_time)
         redis.call("EXPIRE", unavailable_time_key, UNAVAILABLE_EXPIRY_TIME)
     end
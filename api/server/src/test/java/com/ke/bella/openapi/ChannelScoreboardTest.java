@@ -0,0 +1,70 @@
+package com.ke.bella.openapi;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.ke.bella.openapi.protocol.metrics.ChannelScoreboard;
+
+public class ChannelScoreboardTest {
+
+    @Test
+    public void testReleaseOnce() {
+        ChannelScoreboard scoreboard = new ChannelScoreboard();
+        EndpointProcessData processData = new EndpointProcessData();
+        scoreboard.acquire(processData, "ch-1");
+        Assertions.assertEquals(1, scoreboard.inflight("ch-1"));
+        //日志处理只更新评分，不释放在途计数
+        scoreboard.record("ch-1", 200, processData);
+        Assertions.assertEquals(1, scoreboard.inflight("ch-1"));
+        //日志入队和请求线程退出都会释放，只生效一次
+        scoreboard.release(processData);
+        scoreboard.release(processData);
+        Assertions.assertEquals(0, scoreboard.inflight("ch-1"));
+        Assertions.assertNull(processData.getInflightChannel());
+    }
+
+    @Test
+    public void testSwitchChannel() {
+        ChannelScoreboard scoreboard = new ChannelScoreboard();
+        EndpointProcessData processData = new EndpointProcessData();
+        scoreboard.acquire(processData, "ch-1");
+        //失败转移：重新路由时释放原渠道
+        scoreboard.acquire(processData, "ch-2");
+        Assertions.assertEquals(0, scoreboard.inflight("ch-1"));
+        Assertions.assertEquals(1, scoreboard.inflight("ch-2"));
+        //对冲请求胜出：对冲线程占用的计数转给请求
+        scoreboard.acquire("ch-3");
+        scoreboard.bind(processData, "ch-3");
+        Assertions.assertEquals(0, scoreboard.inflight("ch-2"));
+        Assertions.assertEquals(1, scoreboard.inflight("ch-3"));
+        scoreboard.release(processData);
+        Assertions.assertEquals(0, scoreboard.inflight("ch-3"));
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        ChannelScoreboard scoreboard = new ChannelScoreboard();
+        EndpointProcessData first = new EndpointProcessData();
+        EndpointProcessData second = new EndpointProcessData();
+        Assertions.assertTrue(scoreboard.tryAcquire(first, "ch-1", 1));
+        Assertions.assertFalse(scoreboard.tryAcquire(second, "ch-1", 1));
+        Assertions.assertNull(second.getInflightChannel());
+        //超时返回false
+        Assertions.assertFalse(scoreboard.awaitRelease(() -> scoreboard.inflight("ch-1") < 1, 20));
+        //释放时唤醒等待者
+        Thread releaser = new Thread(() -> scoreboard.release(first));
+        releaser.start();
+        Assertions.assertTrue(scoreboard.awaitRelease(() -> scoreboard.inflight("ch-1") < 1, 5000));
+        releaser.join();
+        Assertions.assertTrue(scoreboard.tryAcquire(second, "ch-1", 1));
+    }
+
+    @Test
+    public void testLatencyMillis() {
+        EndpointProcessData processData = new EndpointProcessData();
+        Assertions.assertEquals(-1, ChannelScoreboard.latencyMillis(processData));
+        processData.setRequestMillis(1000);
+        processData.setLogMillis(3500);
+        Assertions.assertEquals(2500, ChannelScoreboard.latencyMillis(processData));
+    }
+}
@@ -0,0 +1,60 @@
+package com.ke.bella.openapi;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.ke.bella.openapi.protocol.cost.CostCounter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CostCounterTest {
+
+    @Test
+    public void testRequeueOnFailure() {
+        AtomicInteger attempts = new AtomicInteger();
+        Map<String, BigDecimal> recorded = new HashMap<>();
+        CostCounter.CostRecorder recorder = new CostCounter.CostRecorder() {
+            @Override
+            public void recordCost(String apikey, String month, BigDecimal cost) {
+                recorded.merge(apikey, cost, BigDecimal::add);
+            }
+
+            @Override
+            public void recordCosts(String month, Map<String, BigDecimal> costs) {
+                if(attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("db unavailable");
+                }
+                costs.forEach((apikey, cost) -> recordCost(apikey, month, cost));
+            }
+        };
+        List<Long> acked = new ArrayList<>();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CostCounter costCounter = new CostCounter(recorder, acked::addAll, registry);
+        costCounter.delta("ak-1", new BigDecimal("1.5"));
+        costCounter.delta("ak-2", new BigDecimal("2"));
+        costCounter.processed(1L);
+        costCounter.processed(2L);
+
+        //写入失败：费用不丢失，事件不确认
+        costCounter.flush();
+        Assertions.assertTrue(recorded.isEmpty());
+        Assertions.assertTrue(acked.isEmpty());
+        Assertions.assertEquals(1, registry.timer("bella.cost.flush", "outcome", "error").count());
+
+        //失败后新增的费用和下次刷写合并
+        costCounter.delta("ak-1", new BigDecimal("1"));
+        costCounter.processed(3L);
+        costCounter.flush();
+        Assertions.assertEquals(0, new BigDecimal("2.5").compareTo(recorded.get("ak-1")));
+        Assertions.assertEquals(0, new BigDecimal("2").compareTo(recorded.get("ak-2")));
+        Assertions.assertEquals(Arrays.asList(1L, 2L, 3L), acked);
+    }
+}
@@ -0,0 +1,32 @@
+package com.ke.bella.openapi;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.ke.bella.openapi.utils.ImageSizeProber;
+
+public class ImageSizeProberTest {
+
+    @Test
+    public void testBase64() throws Exception {
+        for (String format : new String[] { "png", "gif", "bmp", "jpg" }) {
+            BufferedImage image = new BufferedImage(1234, 567, BufferedImage.TYPE_INT_RGB);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, format, out);
+            String dataUrl = "data:image/" + format + ";base64," + Base64.getEncoder().encodeToString(out.toByteArray());
+            Assertions.assertEquals(Pair.of(1234, 567), ImageSizeProber.fromBase64(dataUrl), format);
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        Assertions.assertNull(ImageSizeProber.fromBase64("data:image/png;base64,aGVsbG8="));
+    }
+}
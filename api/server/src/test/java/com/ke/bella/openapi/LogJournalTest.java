@@ -0,0 +1,170 @@
+package com.ke.bella.openapi;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.ke.bella.openapi.protocol.log.LogEvent;
+import com.ke.bella.openapi.protocol.log.LogJournal;
+
+public class LogJournalTest {
+
+    @Test
+    public void testRecoverFromCheckpoint() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        LogJournal journal = journal(dir);
+        Long first = journal.append(event("r1", 0));
+        Long second = journal.append(event("r2", 0));
+        Long third = journal.append(event("r3", 0));
+        journal.ack(LogJournal.STAGE_RECORD, first);
+        journal.ack(LogJournal.STAGE_COST, Arrays.asList(first, second, third));
+        journal.checkpoint(LogJournal.STAGE_RECORD);
+        journal.checkpoint(LogJournal.STAGE_COST);
+        //检查点之后写入的事件所有阶段都要重放，同一requestId只重放一次
+        journal.append(event("r4", 0));
+        journal.append(event("r4", 0));
+        journal.close();
+
+        List<String> processed = new ArrayList<>();
+        List<String> costs = new ArrayList<>();
+        List<String> records = new ArrayList<>();
+        journal(dir).recover(e -> processed.add(e.getData().getRequestId()),
+                (e, sequence, endOfBatch) -> costs.add(e.getData().getRequestId()),
+                (e, sequence, endOfBatch) -> records.add(e.getData().getRequestId()));
+        Assertions.assertEquals(Collections.singletonList("r4"), costs);
+        Assertions.assertEquals(Arrays.asList("r2", "r3", "r4"), records);
+        Assertions.assertEquals(Arrays.asList("r2", "r3", "r4", "r4"), processed);
+    }
+
+    @Test
+    public void testRecoverWithoutCheckpoint() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        LogJournal journal = journal(dir);
+        journal.append(event("r1", 0));
+        journal.append(event("r2", 0));
+        journal.close();
+
+        List<String> records = new ArrayList<>();
+        journal(dir).recover(e -> {
+        }, (e, sequence, endOfBatch) -> {
+        }, (e, sequence, endOfBatch) -> records.add(e.getData().getRequestId()));
+        Assertions.assertEquals(Arrays.asList("r1", "r2"), records);
+    }
+
+    @Test
+    public void testKeepFailedRecords() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        LogJournal journal = journal(dir);
+        journal.append(event("r1", 0));
+        journal.close();
+
+        //重放时日志记录失败，保留为未确认
+        LogJournal recovering = journal(dir);
+        recovering.recover(e -> {
+        }, (e, sequence, endOfBatch) -> {
+        }, (e, sequence, endOfBatch) -> e.setRecordFailed(true));
+        recovering.maintain();
+        recovering.close();
+
+        List<String> records = new ArrayList<>();
+        journal(dir).recover(e -> {
+        }, (e, sequence, endOfBatch) -> {
+        }, (e, sequence, endOfBatch) -> records.add(e.getData().getRequestId()));
+        Assertions.assertEquals(Collections.singletonList("r1"), records);
+    }
+
+    @Test
+    public void testKeepUnflushedCosts() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        LogJournal journal = journal(dir);
+        journal.append(event("r1", 0));
+        journal.close();
+
+        //重放的费用刷写失败（未确认），之后其他事件刷写成功时保存计费阶段的检查点
+        LogJournal recovering = journal(dir);
+        recovering.recover(e -> {
+        }, (e, sequence, endOfBatch) -> {
+        }, (e, sequence, endOfBatch) -> {
+        });
+        recovering.checkpoint(LogJournal.STAGE_COST);
+        recovering.close();
+
+        List<String> costs = new ArrayList<>();
+        journal(dir).recover(e -> {
+        }, (e, sequence, endOfBatch) -> costs.add(e.getData().getRequestId()), (e, sequence, endOfBatch) -> {
+        });
+        Assertions.assertEquals(Collections.singletonList("r1"), costs);
+    }
+
+    @Test
+    public void testDeleteAckedSegments() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        LogJournal journal = journal(dir);
+        //每个分段（1MB）只能容纳两个事件
+        List<Long> offsets = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            offsets.add(journal.append(event("r" + i, 400 * 1024)));
+        }
+        Assertions.assertEquals(3, segments(dir).size());
+        //第一个分段中有未确认的事件时不删除
+        journal.ack(LogJournal.STAGE_COST, offsets);
+        journal.ack(LogJournal.STAGE_RECORD, offsets.subList(1, offsets.size()));
+        journal.maintain();
+        Assertions.assertEquals(3, segments(dir).size());
+        //全部确认后只保留当前分段
+        journal.ack(LogJournal.STAGE_RECORD, offsets.get(0));
+        journal.maintain();
+        Assertions.assertEquals(1, segments(dir).size());
+        Assertions.assertTrue(Files.exists(dir.resolve(LogJournal.STAGE_RECORD + ".checkpoint")));
+    }
+
+    @Test
+    public void testRequireDir() throws Exception {
+        LogJournal journal = new LogJournal();
+        set(journal, "enabled", true);
+        set(journal, "journalDir", "");
+        Assertions.assertThrows(IllegalArgumentException.class, journal::init);
+    }
+
+    private static LogJournal journal(Path dir) throws Exception {
+        LogJournal journal = new LogJournal();
+        set(journal, "enabled", true);
+        set(journal, "journalDir", dir.toString());
+        set(journal, "segmentSizeMb", 1);
+        journal.init();
+        return journal;
+    }
+
+    private static LogEvent event(String requestId, int requestSize) {
+        EndpointProcessData data = new EndpointProcessData();
+        data.setRequestId(requestId);
+        data.setRequest(StringUtils.repeat('x', requestSize));
+        LogEvent event = new LogEvent();
+        event.setData(data);
+        event.setRepositoryCode("consoleLogRepo");
+        return event;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".journal")).collect(Collectors.toList());
+        }
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
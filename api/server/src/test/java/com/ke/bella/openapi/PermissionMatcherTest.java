@@ -0,0 +1,49 @@
+package com.ke.bella.openapi;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+
+import com.ke.bella.openapi.apikey.ApikeyInfo;
+import com.ke.bella.openapi.utils.PermissionMatcher;
+
+public class PermissionMatcherTest {
+    private static final List<String> PATTERNS = Arrays.asList("/v*/chat/completions", "/v1/**", "/console/**/list", "/**/audio/*",
+            "/v1/files/{fileId}/url", "/v1/{v:[a-z]+}/x?z", "/v1/apikey/", "*", "/", "/**", "/v1/*/", "/a/**/b/**/c");
+    private static final List<String> URLS = Arrays.asList("/v1/chat/completions", "/v2/chat/completions", "/v1", "/v1/", "/console/a/b/list",
+            "/console/list", "/x/y/audio/speech", "/audio/speech", "/v1/files/abc/url", "/v1/files/url", "/v1/abc/xyz", "/v1/ab1/xyz",
+            "/v1/apikey", "/v1/apikey/", "/", "", "v1/chat/completions", "/a/b/c", "/a/x/b/y/c", "/a/b/c/d");
+
+    @Test
+    public void testSameAsAntPathMatcher() {
+        AntPathMatcher antPathMatcher = new AntPathMatcher();
+        for (String pattern : PATTERNS) {
+            ApikeyInfo.RolePath rolePath = new ApikeyInfo.RolePath();
+            rolePath.setIncluded(Collections.singletonList(pattern));
+            PermissionMatcher matcher = PermissionMatcher.of(rolePath);
+            for (String url : URLS) {
+                Assertions.assertEquals(antPathMatcher.match(pattern, url), matcher.matches(url), pattern + " " + url);
+                //第二次走判定缓存
+                Assertions.assertEquals(antPathMatcher.match(pattern, url), matcher.matches(url), pattern + " " + url);
+            }
+        }
+    }
+
+    @Test
+    public void testExcluded() {
+        ApikeyInfo.RolePath rolePath = new ApikeyInfo.RolePath();
+        rolePath.setIncluded(Arrays.asList("/v1/**", "/console/**"));
+        rolePath.setExcluded(Collections.singletonList("/v1/apikey/**"));
+        ApikeyInfo apikeyInfo = new ApikeyInfo();
+        apikeyInfo.setRolePath(rolePath);
+        Assertions.assertTrue(apikeyInfo.hasPermission("/v1/chat/completions"));
+        Assertions.assertTrue(apikeyInfo.hasPermission("/console/apikey/list"));
+        Assertions.assertFalse(apikeyInfo.hasPermission("/v1/apikey/whoami"));
+        Assertions.assertFalse(apikeyInfo.hasPermission("/v2/chat/completions"));
+        Assertions.assertFalse(new ApikeyInfo().hasPermission("/v1/chat/completions"));
+    }
+}
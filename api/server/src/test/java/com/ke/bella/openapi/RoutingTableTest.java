@@ -0,0 +1,75 @@
+package com.ke.bella.openapi;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.ke.bella.openapi.common.EntityConstants;
+import com.ke.bella.openapi.protocol.RoutingTable;
+import com.ke.bella.openapi.tables.pojos.ChannelDB;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class RoutingTableTest {
+
+    @Test
+    public void testPriorityAndVisibility() {
+        RoutingTable table = RoutingTable.build(Lists.newArrayList(
+                channel("ch-low", EntityConstants.PUBLIC, EntityConstants.LOW, EntityConstants.MAINLAND),
+                channel("ch-high", EntityConstants.PUBLIC, EntityConstants.HIGH, EntityConstants.MAINLAND),
+                channel("ch-private", EntityConstants.PRIVATE, EntityConstants.LOW, EntityConstants.MAINLAND)));
+        Assertions.assertEquals(Lists.newArrayList("ch-private"),
+                codes(table.pick((byte) 40, RoutingTable.ownerKey("person", "1"), Collections.emptySet())));
+        Assertions.assertEquals(Lists.newArrayList("ch-high"),
+                codes(table.pick((byte) 40, RoutingTable.ownerKey("person", "2"), Collections.emptySet())));
+        Assertions.assertEquals(Lists.newArrayList("ch-low"),
+                codes(table.pick((byte) 40, RoutingTable.ownerKey("person", "2"), Sets.newHashSet("ch-high"))));
+        Assertions.assertEquals(Lists.newArrayList("ch-private"), codes(table.pickAny()));
+    }
+
+    @Test
+    public void testSafetyLevelAndAvailability() {
+        RoutingTable table = RoutingTable.build(Lists.newArrayList(
+                channel("ch-overseas", EntityConstants.PUBLIC, EntityConstants.HIGH, EntityConstants.OVERSEAS),
+                channel("ch-inner", EntityConstants.PUBLIC, EntityConstants.HIGH, EntityConstants.INNER)));
+        String owner = RoutingTable.ownerKey("person", "1");
+        Assertions.assertTrue(table.hasEligible((byte) 20, owner));
+        Assertions.assertFalse(table.hasEligible((byte) 10, owner));
+        Assertions.assertEquals(Lists.newArrayList("ch-inner"),
+                codes(table.pick((byte) 20, owner, Collections.emptySet())));
+        Assertions.assertEquals(Lists.newArrayList("ch-inner"),
+                codes(table.pick((byte) 40, owner, Sets.newHashSet("ch-overseas", "ch-inner"))));
+    }
+
+    @Test
+    public void testExcluded() {
+        RoutingTable table = RoutingTable.build(Lists.newArrayList(
+                channel("ch-inner", EntityConstants.PUBLIC, EntityConstants.HIGH, EntityConstants.INNER),
+                channel("ch-high", EntityConstants.PUBLIC, EntityConstants.HIGH, EntityConstants.MAINLAND),
+                channel("ch-low", EntityConstants.PUBLIC, EntityConstants.LOW, EntityConstants.MAINLAND)));
+        String owner = RoutingTable.ownerKey("person", "1");
+        Assertions.assertEquals(Lists.newArrayList("ch-high"),
+                codes(table.pick((byte) 40, owner, Collections.emptySet(), Sets.newHashSet("ch-inner"))));
+        Assertions.assertEquals(Lists.newArrayList("ch-low"),
+                codes(table.pick((byte) 40, owner, Collections.emptySet(), Sets.newHashSet("ch-inner", "ch-high"))));
+        Assertions.assertTrue(table.pick((byte) 40, owner, Collections.emptySet(), Sets.newHashSet("ch-inner", "ch-high", "ch-low")).isEmpty());
+    }
+
+    private static List<String> codes(List<ChannelDB> channels) {
+        return channels.stream().map(ChannelDB::getChannelCode).collect(Collectors.toList());
+    }
+
+    private static ChannelDB channel(String code, String visibility, String priority, String dataDestination) {
+        ChannelDB channel = new ChannelDB();
+        channel.setChannelCode(code);
+        channel.setVisibility(visibility);
+        channel.setPriority(priority);
+        channel.setDataDestination(dataDestination);
+        channel.setOwnerType("person");
+        channel.setOwnerCode("1");
+        channel.setTrialEnabled((byte) 0);
+        return channel;
+    }
+}